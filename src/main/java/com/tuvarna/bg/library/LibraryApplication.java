@@ -1,5 +1,9 @@
 package com.tuvarna.bg.library;
 
+import com.tuvarna.bg.library.service.CoverImageService;
+import com.tuvarna.bg.library.service.MaintenanceJobs;
+import com.tuvarna.bg.library.util.BackgroundTasks;
+import com.tuvarna.bg.library.util.ChangeNotifications;
 import com.tuvarna.bg.library.util.DatabaseUtil;
 import javafx.application.Application;
 import javafx.application.Platform;
@@ -19,6 +23,8 @@ public class LibraryApplication extends Application {
     @Override
     public void start(Stage stage) throws Exception {
         DatabaseUtil.initializeDatabase();
+        MaintenanceJobs.start();
+        ChangeNotifications.start();
 
         final String FXML_PATH = "/com/tuvarna/bg/library/view/login-view.fxml";
         URL fxmlUrl = getClass().getResource(FXML_PATH);
@@ -60,5 +66,14 @@ public class LibraryApplication extends Application {
         stage.show();
     }
 
+    @Override
+    public void stop() {
+        ChangeNotifications.stop();
+        MaintenanceJobs.stop();
+        BackgroundTasks.shutdown();
+        CoverImageService.getInstance().shutdown();
+        DatabaseUtil.shutdown();
+    }
+
     public static void main(String[] args) { launch(args); }
 }
@@ -1,5 +1,6 @@
 package com.tuvarna.bg.library.controllers;
 
+import com.tuvarna.bg.library.service.ReferenceDataCache;
 import com.tuvarna.bg.library.util.DatabaseUtil;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -51,6 +52,7 @@ public class AddGenreController {
 
                 int rowsAffected = stmt.executeUpdate();
                 if (rowsAffected > 0) {
+                    ReferenceDataCache.getInstance().invalidateGenres();
                     showMessage("Genre added successfully!", false);
                     clearForm();
                 } else {
@@ -2,6 +2,16 @@ package com.tuvarna.bg.library.controllers;
 
 import com.tuvarna.bg.library.dao.UserDAO;
 import com.tuvarna.bg.library.entity.*;
+import com.tuvarna.bg.library.service.AuthorLineCache;
+import com.tuvarna.bg.library.service.BookSearchService;
+import com.tuvarna.bg.library.service.CoverStore;
+import com.tuvarna.bg.library.service.Leaderboards;
+import com.tuvarna.bg.library.service.MaintenanceJobs;
+import com.tuvarna.bg.library.service.ReferenceDataCache;
+import com.tuvarna.bg.library.ui.KeysetPager;
+import com.tuvarna.bg.library.util.BackgroundTasks;
+import com.tuvarna.bg.library.util.Debouncer;
+import com.tuvarna.bg.library.util.JobScheduler;
 import com.tuvarna.bg.library.util.DatabaseUtil;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -15,6 +25,7 @@ import javafx.geometry.Pos;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import javafx.stage.StageStyle;
+import javafx.util.Duration;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.scene.control.cell.PropertyValueFactory;
@@ -25,14 +36,14 @@ import javafx.beans.property.SimpleStringProperty;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
 import java.sql.*;
 import java.sql.Date;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.logging.Logger;
 
 public class AdminDashboardController implements DashboardController {
 
@@ -58,11 +69,13 @@ public class AdminDashboardController implements DashboardController {
     @FXML private TableColumn<UserEntity, UserEntity> userActionsColumn; // bind the whole row
 
     // Keeps the copy count for each book shown in the table (populated by queries)
-    private final java.util.Map<Integer, Integer> copyCountByBookId = new java.util.HashMap<>();
+    // Filled from background page loads, read by the copies cells
+    private final java.util.Map<Integer, Integer> copyCountByBookId = new java.util.concurrent.ConcurrentHashMap<>();
 
 
     // ---- Reports & Analytics KPI labels ----
     @FXML private Label totalBooksLabel, totalUsersLabel, activeLoansLabel, overdueLabel;
+    @FXML private ComboBox<Integer> leaderboardWindowCombo; // days, 0 = all time
 
     @FXML private VBox requestCardsContainer;
     @FXML private VBox addAuthorForm, addGenreForm;
@@ -76,6 +89,13 @@ public class AdminDashboardController implements DashboardController {
     private final List<AuthorEntity> selectedAuthors = new ArrayList<>();
     private final List<GenreEntity> selectedGenres = new ArrayList<>();
     private UserDAO userDAO;
+    private final BackgroundTasks background = new BackgroundTasks();
+    private final ReferenceDataCache referenceData = ReferenceDataCache.getInstance();
+    private final AuthorLineCache authorLines = AuthorLineCache.getInstance();
+    private final BookSearchService bookSearch = new BookSearchService();
+    private KeysetPager<BookEntity> booksPager;
+    private final Debouncer searchDebouncer =
+            new Debouncer(Duration.millis(BookSearchService.TYPE_AHEAD_DEBOUNCE_MS));
 
     // ===== Validation helpers =====
     private static final Set<String> ISO_LANGUAGE_CODES = new HashSet<>();
@@ -180,12 +200,38 @@ public class AdminDashboardController implements DashboardController {
         userDAO = new UserDAO();
         setupTableColumns();
         setupComboBoxes();
+        setupLeaderboardWindow();
+        booksPager = new KeysetPager<>(booksTable, background, "books", this::queryBookPage);
+        booksPager.setOnError(Throwable::printStackTrace);
         loadInitialData();
+        setupTypeAhead();
 
         if (booksTable != null)   VBox.setVgrow(booksTable, Priority.ALWAYS);
         if (usersTable != null)   VBox.setVgrow(usersTable, Priority.ALWAYS);
     }
 
+    private void setupLeaderboardWindow() {
+        if (leaderboardWindowCombo == null) return;
+        leaderboardWindowCombo.setItems(FXCollections.observableArrayList(Leaderboards.WINDOWS));
+        leaderboardWindowCombo.setConverter(new javafx.util.StringConverter<>() {
+            @Override public String toString(Integer days) { return windowLabel(days); }
+            @Override public Integer fromString(String s) { return null; }
+        });
+        leaderboardWindowCombo.getSelectionModel().selectFirst();
+        leaderboardWindowCombo.valueProperty().addListener((obs, ov, nv) -> loadStatistics());
+    }
+
+    private static String windowLabel(Integer days) {
+        if (days == null || days == 0) return "All time";
+        return "Last " + days + " days";
+    }
+
+    // Search-as-you-type: each keystroke restarts the debounce window
+    private void setupTypeAhead() {
+        if (searchField == null || BookSearchService.TYPE_AHEAD_DEBOUNCE_MS <= 0) return;
+        searchField.textProperty().addListener((obs, ov, nv) -> searchDebouncer.trigger(this::searchBooks));
+    }
+
     private void setupTableColumns() {
         /* ---------------- Books table ---------------- */
 
@@ -325,6 +371,12 @@ public class AdminDashboardController implements DashboardController {
 
     private void loadAuthors() {
         if (authorCombo == null) return;
+        background.submit("authors", this::queryAuthors,
+                authors -> authorCombo.setItems(FXCollections.observableArrayList(authors)),
+                Throwable::printStackTrace);
+    }
+
+    private List<AuthorEntity> queryAuthors() throws SQLException {
         try (Connection conn = DatabaseUtil.getConnection();
              Statement stmt = conn.createStatement();
              // DISTINCT ON de-dupes same-name rows (PostgreSQL)
@@ -334,7 +386,7 @@ public class AdminDashboardController implements DashboardController {
              FROM authors
              ORDER BY LOWER(full_name), authors_id
          """)) {
-            ObservableList<AuthorEntity> authors = FXCollections.observableArrayList();
+            List<AuthorEntity> authors = new ArrayList<>();
             while (rs.next()) {
                 AuthorEntity a = new AuthorEntity();
                 a.setAuthorsId(rs.getInt("authors_id"));
@@ -343,8 +395,8 @@ public class AdminDashboardController implements DashboardController {
                 if (bd != null) a.setBirthDate(bd.toLocalDate());
                 authors.add(a);
             }
-            authorCombo.setItems(authors);
-        } catch (SQLException e) { e.printStackTrace(); }
+            return authors;
+        }
     }
 
     private void setupComboBoxes() {
@@ -440,17 +492,15 @@ public class AdminDashboardController implements DashboardController {
         if (selectedImageFile != null) imageLabel.setText(selectedImageFile.getName());
     }
 
-    private String saveImageToLibrary() {
-        if (selectedImageFile == null) return null;
+    // Called from the background add-book task
+    // Content-addressed: identical uploads share one file (and its thumbnails)
+    private String saveImageToLibrary(File imageFile) {
+        if (imageFile == null) return null;
         try {
-            Path imagesDir = Paths.get("library_images");
-            if (!Files.exists(imagesDir)) Files.createDirectories(imagesDir);
-            String fileName = System.currentTimeMillis() + "_" + selectedImageFile.getName();
-            Path targetPath = imagesDir.resolve(fileName);
-            Files.copy(selectedImageFile.toPath(), targetPath, StandardCopyOption.REPLACE_EXISTING);
-            return targetPath.toString();
+            return CoverStore.store(imageFile.toPath());
         } catch (IOException e) {
-            showAlert("Error", "Failed to save image: " + e.getMessage(), Alert.AlertType.ERROR);
+            BackgroundTasks.onFxThread(() ->
+                    showAlert("Error", "Failed to save image: " + e.getMessage(), Alert.AlertType.ERROR));
             return null;
         }
     }
@@ -459,25 +509,47 @@ public class AdminDashboardController implements DashboardController {
     private void addBook() {
         if (!validateBookForm()) return;
 
-        try {
-            String imagePath = saveImageToLibrary();
-            int bookId = insertBook(imagePath);
+        // snapshot the form on the FX thread; the inserts run in the background
+        BookForm form = readBookForm();
 
-            if (bookId > 0) {
-                insertBookAuthors(bookId);
-                insertBookGenres(bookId);
-                insertBookCopies(bookId);
+        background.submitWrite("addBook", () -> {
+            String imagePath = saveImageToLibrary(form.imageFile);
+            int bookId = insertBook(form, imagePath);
 
+            if (bookId > 0) {
+                insertBookAuthors(bookId, form.authors);
+                insertBookGenres(bookId, form.genres);
+                insertBookCopies(bookId, form.copies);
+                referenceData.invalidateLanguages(); // the book may bring a new language
+            }
+            return bookId;
+        }, bookId -> {
+            if (bookId > 0) {
                 showAlert("Success", "Book added successfully!", Alert.AlertType.INFORMATION);
                 clearBookForm();
                 refreshBooks();
                 loadStatistics(); // refresh KPIs/cards
             }
-
-        } catch (SQLException e) {
+        }, e -> {
             showAlert("Error", "Failed to add book: " + e.getMessage(), Alert.AlertType.ERROR);
             e.printStackTrace();
-        }
+        });
+    }
+
+    private BookForm readBookForm() {
+        BookForm f = new BookForm();
+        f.title = titleCase(titleField.getText().trim());
+        f.isbn = toDigits(isbnField.getText().trim());
+        f.language = canonicalizeLanguage(languageField.getText().trim()); // already validated
+        f.summary = summaryArea.getText().trim();
+        String yearText = yearField.getText().trim();
+        f.year = yearText.isEmpty() ? null : Integer.parseInt(yearText);
+        f.publishersId = publisherCombo.getValue().getPublishersId();
+        f.copies = Integer.parseInt(copiesField.getText().trim());
+        f.imageFile = selectedImageFile;
+        f.authors = new ArrayList<>(selectedAuthors);
+        f.genres = new ArrayList<>(selectedGenres);
+        return f;
     }
 
     private boolean validateBookForm() {
@@ -588,26 +660,21 @@ public class AdminDashboardController implements DashboardController {
     }
 
 
-    private int insertBook(String imagePath) throws SQLException {
+    private int insertBook(BookForm form, String imagePath) throws SQLException {
         String sql = "INSERT INTO books (title, summary, isbn, language, publication_year, publishers_id, image_path) " +
                 "VALUES (?, ?, ?, ?, ?, ?, ?) RETURNING books_id";
         try (Connection conn = DatabaseUtil.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
-            String title = titleCase(titleField.getText().trim());
-            String isbnDigits = toDigits(isbnField.getText().trim());
-            String lang = canonicalizeLanguage(languageField.getText().trim()); // already validated
-
-            stmt.setString(1, title);
-            stmt.setString(2, summaryArea.getText().trim());
-            stmt.setString(3, isbnDigits);
-            stmt.setString(4, lang);
+            stmt.setString(1, form.title);
+            stmt.setString(2, form.summary);
+            stmt.setString(3, form.isbn);
+            stmt.setString(4, form.language);
 
-            String yearText = yearField.getText().trim();
-            if (!yearText.isEmpty()) stmt.setInt(5, Integer.parseInt(yearText));
+            if (form.year != null) stmt.setInt(5, form.year);
             else stmt.setNull(5, Types.INTEGER);
 
-            stmt.setInt(6, publisherCombo.getValue().getPublishersId());
+            stmt.setInt(6, form.publishersId);
             stmt.setString(7, imagePath);
 
             try (ResultSet rs = stmt.executeQuery()) {
@@ -618,8 +685,8 @@ public class AdminDashboardController implements DashboardController {
     }
 
 
-    private void insertBookAuthors(int bookId) throws SQLException {
-        for (AuthorEntity author : selectedAuthors) {
+    private void insertBookAuthors(int bookId, List<AuthorEntity> authors) throws SQLException {
+        for (AuthorEntity author : authors) {
             int authorId = getOrCreateAuthor(author);
             try (Connection conn = DatabaseUtil.getConnection();
                  PreparedStatement stmt = conn.prepareStatement("INSERT INTO book_authors (books_id, authors_id) VALUES (?, ?)")) {
@@ -628,10 +695,11 @@ public class AdminDashboardController implements DashboardController {
                 stmt.executeUpdate();
             }
         }
+        authorLines.invalidate(bookId);
     }
 
-    private void insertBookGenres(int bookId) throws SQLException {
-        for (GenreEntity genre : selectedGenres) {
+    private void insertBookGenres(int bookId, List<GenreEntity> genres) throws SQLException {
+        for (GenreEntity genre : genres) {
             int genreId = getOrCreateGenre(genre);
             try (Connection conn = DatabaseUtil.getConnection();
                  PreparedStatement stmt = conn.prepareStatement("INSERT INTO book_genres (books_id, genres_id) VALUES (?, ?)")) {
@@ -642,8 +710,7 @@ public class AdminDashboardController implements DashboardController {
         }
     }
 
-    private void insertBookCopies(int bookId) throws SQLException {
-        int copies = Integer.parseInt(copiesField.getText().trim());
+    private void insertBookCopies(int bookId, int copies) throws SQLException {
         String sql = "INSERT INTO book_copies (books_id, status, acquired_at) VALUES (?, 'AVAILABLE', ?)";
         try (Connection conn = DatabaseUtil.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -692,6 +759,7 @@ public class AdminDashboardController implements DashboardController {
             stmt.setString(1, genre.getGenreName());
             stmt.setString(2, genre.getGenreDescription());
             try (ResultSet rs = stmt.executeQuery()) {
+                referenceData.invalidateGenres();
                 if (rs.next()) return rs.getInt("genres_id");
             }
         }
@@ -816,123 +884,130 @@ public class AdminDashboardController implements DashboardController {
     }
 
     private void loadPublishers() {
-        try (Connection conn = DatabaseUtil.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery("SELECT * FROM publishers ORDER BY pub_name")) {
-            ObservableList<PublisherEntity> publishers = FXCollections.observableArrayList();
-            while (rs.next()) {
-                PublisherEntity p = new PublisherEntity();
-                p.setPublishersId(rs.getInt("publishers_id"));
-                p.setPubName(rs.getString("pub_name"));
-                p.setEstablishedOn(rs.getDate("established_on") != null ? rs.getDate("established_on").toLocalDate() : null);
-                publishers.add(p);
-            }
-            publisherCombo.setItems(publishers);
-        } catch (SQLException e) { e.printStackTrace(); }
+        background.submit("publishers", referenceData::publishers,
+                publishers -> publisherCombo.setItems(FXCollections.observableArrayList(publishers)),
+                Throwable::printStackTrace);
     }
 
     private void loadGenres() {
-        try (Connection conn = DatabaseUtil.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery("SELECT * FROM genres ORDER BY gen_name")) {
-            ObservableList<GenreEntity> genres = FXCollections.observableArrayList();
-            while (rs.next()) {
-                GenreEntity g = new GenreEntity();
-                g.setGenresId(rs.getInt("genres_id"));
-                g.setGenreName(rs.getString("gen_name"));
-                g.setGenreDescription(rs.getString("genre_desc"));
-                genres.add(g);
-            }
-            genreCombo.setItems(genres);
-        } catch (SQLException e) { e.printStackTrace(); }
+        background.submit("genres", referenceData::genres,
+                genres -> genreCombo.setItems(FXCollections.observableArrayList(genres)),
+                Throwable::printStackTrace);
     }
 
+    // Only managers can be created from here
     private void loadRoles() {
-        try (Connection conn = DatabaseUtil.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery("SELECT * FROM roles WHERE name = 'MANAGER' ORDER BY name")) {
-            ObservableList<RoleEntity> roles = FXCollections.observableArrayList();
-            while (rs.next()) {
-                RoleEntity r = new RoleEntity();
-                r.setRolesId(rs.getInt("roles_id"));
-                r.setName(rs.getString("name"));
-                roles.add(r);
-            }
-            userRoleCombo.setItems(roles);
-        } catch (SQLException e) { e.printStackTrace(); }
+        background.submit("roles",
+                () -> referenceData.roles().stream().filter(r -> "MANAGER".equals(r.getName())).toList(),
+                roles -> userRoleCombo.setItems(FXCollections.observableArrayList(roles)),
+                Throwable::printStackTrace);
     }
 
     @FXML
     private void refreshBooks() {
-        copyCountByBookId.clear();
+        booksPager.reload();
+    }
 
-        try (Connection conn = DatabaseUtil.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery("""
-             SELECT b.*, p.pub_name, COUNT(bc.copies_id) AS copy_count
+    // Keyset page of the catalogue ordered by (title, books_id); copy counts go straight into the shared map
+    private List<BookEntity> queryBookPage(BookEntity after, int limit) throws SQLException {
+        String sql = """
+             SELECT b.books_id, b.title, b.summary, b.isbn, b.language, b.publication_year, b.image_path,
+                    p.pub_name,
+                    (SELECT COUNT(*) FROM book_copies bc WHERE bc.books_id = b.books_id) AS copy_count
              FROM books b
              LEFT JOIN publishers p ON b.publishers_id = p.publishers_id
-             LEFT JOIN book_copies bc ON b.books_id = bc.books_id
-             GROUP BY b.books_id, p.pub_name
-             ORDER BY b.title
-         """)) {
+             %s
+             ORDER BY b.title, b.books_id
+             LIMIT ?
+         """.formatted(after != null ? "WHERE (b.title, b.books_id) > (?, ?)" : "");
+        try (Connection conn = DatabaseUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            int i = 1;
+            if (after != null) {
+                ps.setString(i++, after.getTitle());
+                ps.setInt(i++, after.getBooksId());
+            }
+            ps.setInt(i, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                BookRows rows = mapBookRows(rs);
+                copyCountByBookId.putAll(rows.copyCounts);
+                return rows.books;
+            }
+        }
+    }
 
-            ObservableList<BookEntity> books = FXCollections.observableArrayList();
-            while (rs.next()) {
-                BookEntity book = new BookEntity();
-                int bookId = rs.getInt("books_id");
-                book.setBooksId(bookId);
-                book.setTitle(rs.getString("title"));
-                book.setIsbn(rs.getString("isbn"));
-                book.setLanguage(rs.getString("language"));
+    // Maps the books-with-copy-count projection shared by the page query and searchBooks()
+    private static BookRows mapBookRows(ResultSet rs) throws SQLException {
+        BookRows out = new BookRows();
+        while (rs.next()) {
+            BookEntity book = new BookEntity();
+            int bookId = rs.getInt("books_id");
+            book.setBooksId(bookId);
+            book.setTitle(rs.getString("title"));
+            book.setIsbn(rs.getString("isbn"));
+            book.setLanguage(rs.getString("language"));
 
-                try {
-                    int yr = rs.getInt("publication_year");
-                    if (!rs.wasNull()) book.setPublicationYear(yr);
-                } catch (SQLException ignore) {}
+            try {
+                int yr = rs.getInt("publication_year");
+                if (!rs.wasNull()) book.setPublicationYear(yr);
+            } catch (SQLException ignore) {}
 
-                book.setSummary(rs.getString("summary"));
-                book.setImagePath(rs.getString("image_path"));
+            book.setSummary(rs.getString("summary"));
+            book.setImagePath(rs.getString("image_path"));
 
-                // put the COUNT into the controller map
-                int cnt = 0;
-                try { cnt = rs.getInt("copy_count"); if (rs.wasNull()) cnt = 0; } catch (SQLException ignore) {}
-                copyCountByBookId.put(bookId, cnt);
+            // put the COUNT into the controller map
+            int cnt = 0;
+            try { cnt = rs.getInt("copy_count"); if (rs.wasNull()) cnt = 0; } catch (SQLException ignore) {}
+            out.copyCounts.put(bookId, cnt);
 
-                PublisherEntity publisher = new PublisherEntity();
-                publisher.setPubName(rs.getString("pub_name"));
-                book.setPublisher(publisher);
+            PublisherEntity publisher = new PublisherEntity();
+            publisher.setPubName(rs.getString("pub_name"));
+            book.setPublisher(publisher);
 
-                books.add(book);
-            }
-            booksTable.setItems(books);
-            booksTable.refresh(); // repaint actions & copies cells
-        } catch (SQLException e) {
-            e.printStackTrace();
+            out.books.add(book);
         }
+        return out;
+    }
+
+    private void showBookRows(BookRows rows) {
+        copyCountByBookId.clear();
+        copyCountByBookId.putAll(rows.copyCounts);
+        booksTable.setItems(FXCollections.observableArrayList(rows.books));
+        booksTable.refresh(); // repaint actions & copies cells
     }
 
     private void refreshUsers() {
-        List<UserEntity> users = userDAO.findByRole("MANAGER");
-        usersTable.setItems(FXCollections.observableArrayList(users));
-        usersTable.refresh(); // ensure action cells repaint on data swap
+        background.submit("users", () -> userDAO.findByRole("MANAGER"), users -> {
+            usersTable.setItems(FXCollections.observableArrayList(users));
+            usersTable.refresh(); // ensure action cells repaint on data swap
+        });
     }
 
 
     // ======= uses AnalyticsService (single round-trip & updates cards) =======
     private void loadStatistics() {
-        try {
-            DashboardStats s = analyticsService.loadStats();
+        loadStatistics(false);
+    }
+
+    private void loadStatistics(boolean refreshLeaderboards) {
+        int windowDays = leaderboardWindowCombo != null && leaderboardWindowCombo.getValue() != null
+                ? leaderboardWindowCombo.getValue() : 0;
+        background.submit("analytics", () -> queryAnalytics(windowDays, refreshLeaderboards), snapshot -> {
+            DashboardStats s = snapshot.stats;
 
             if (totalBooksLabel != null)  totalBooksLabel.setText("Total Books: " + s.totalBooks);
             if (totalUsersLabel != null)  totalUsersLabel.setText("Total Users: " + s.totalUsers);
             if (activeLoansLabel != null) activeLoansLabel.setText("Active Loans: " + s.activeLoans);
             if (overdueLabel != null)     overdueLabel.setText("Overdue: " + s.overdueLoans);
 
-            loadAnalyticsCards(s);
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+            loadAnalyticsCards(snapshot, windowDays);
+        }, Throwable::printStackTrace);
+    }
+
+    // Runs off the FX thread
+    private AnalyticsSnapshot queryAnalytics(int windowDays, boolean refreshLeaderboards) throws SQLException {
+        if (refreshLeaderboards) Leaderboards.refresh();
+        return analyticsService.loadSnapshot(5, windowDays);
     }
     // ========================================================================
 
@@ -958,79 +1033,88 @@ public class AdminDashboardController implements DashboardController {
 
         if (confirmAlert.showAndWait().orElse(ButtonType.CANCEL) != ButtonType.OK) return;
 
-        try (Connection conn = DatabaseUtil.getConnection()) {
-            conn.setAutoCommit(false);
-
-            // 1) Block deletion if there are ACTIVE loans for any copy of this book
-            String activeLoansSql =
-                    "SELECT COUNT(*) " +
-                            "FROM loans l " +
-                            "JOIN book_copies bc ON bc.copies_id = l.copy_id " +
-                            "WHERE bc.books_id = ? AND l.returned_at IS NULL";
-            try (PreparedStatement ps = conn.prepareStatement(activeLoansSql)) {
-                ps.setInt(1, book.getBooksId());
-                try (ResultSet rs = ps.executeQuery()) {
-                    rs.next();
-                    if (rs.getInt(1) > 0) {
-                        conn.rollback();
-                        showAlert("Cannot Delete",
-                                "This book has active loans. Please return all copies first.",
-                                Alert.AlertType.WARNING);
-                        return;
+        int bookId = book.getBooksId();
+        background.submitWrite("deleteBook", () -> {
+            try (Connection conn = DatabaseUtil.getConnection()) {
+                conn.setAutoCommit(false);
+
+                // 1) Block deletion if there are ACTIVE loans for any copy of this book
+                String activeLoansSql =
+                        "SELECT COUNT(*) " +
+                                "FROM loans l " +
+                                "JOIN book_copies bc ON bc.copies_id = l.copy_id " +
+                                "WHERE bc.books_id = ? AND l.returned_at IS NULL";
+                try (PreparedStatement ps = conn.prepareStatement(activeLoansSql)) {
+                    ps.setInt(1, bookId);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        rs.next();
+                        if (rs.getInt(1) > 0) {
+                            conn.rollback();
+                            return false;
+                        }
                     }
                 }
-            }
 
-            // 2) Delete reservations for the book
-            try (PreparedStatement ps = conn.prepareStatement(
-                    "DELETE FROM reservations WHERE book_id = ?")) {
-                ps.setInt(1, book.getBooksId());
-                ps.executeUpdate();
-            }
+                // 2) Delete reservations for the book
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "DELETE FROM reservations WHERE book_id = ?")) {
+                    ps.setInt(1, bookId);
+                    ps.executeUpdate();
+                }
 
-            // 3) Delete loan history for copies of this book (if you want to keep history, skip this)
-            try (PreparedStatement ps = conn.prepareStatement(
-                    "DELETE FROM loans WHERE copy_id IN (SELECT copies_id FROM book_copies WHERE books_id = ?)")) {
-                ps.setInt(1, book.getBooksId());
-                ps.executeUpdate();
-            }
+                // 3) Delete loan history for copies of this book (if you want to keep history, skip this)
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "DELETE FROM loans WHERE copy_id IN (SELECT copies_id FROM book_copies WHERE books_id = ?)")) {
+                    ps.setInt(1, bookId);
+                    ps.executeUpdate();
+                }
 
-            // 4) Delete copies
-            try (PreparedStatement ps = conn.prepareStatement(
-                    "DELETE FROM book_copies WHERE books_id = ?")) {
-                ps.setInt(1, book.getBooksId());
-                ps.executeUpdate();
-            }
+                // 4) Delete copies
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "DELETE FROM book_copies WHERE books_id = ?")) {
+                    ps.setInt(1, bookId);
+                    ps.executeUpdate();
+                }
 
-            // 5) Delete join rows
-            try (PreparedStatement ps = conn.prepareStatement(
-                    "DELETE FROM book_authors WHERE books_id = ?")) {
-                ps.setInt(1, book.getBooksId());
-                ps.executeUpdate();
-            }
-            try (PreparedStatement ps = conn.prepareStatement(
-                    "DELETE FROM book_genres WHERE books_id = ?")) {
-                ps.setInt(1, book.getBooksId());
-                ps.executeUpdate();
-            }
+                // 5) Delete join rows
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "DELETE FROM book_authors WHERE books_id = ?")) {
+                    ps.setInt(1, bookId);
+                    ps.executeUpdate();
+                }
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "DELETE FROM book_genres WHERE books_id = ?")) {
+                    ps.setInt(1, bookId);
+                    ps.executeUpdate();
+                }
 
-            // 6) Finally delete the book
-            try (PreparedStatement ps = conn.prepareStatement(
-                    "DELETE FROM books WHERE books_id = ?")) {
-                ps.setInt(1, book.getBooksId());
-                int rows = ps.executeUpdate();
-                if (rows == 0) throw new SQLException("Book not found.");
-            }
+                // 6) Finally delete the book
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "DELETE FROM books WHERE books_id = ?")) {
+                    ps.setInt(1, bookId);
+                    int rows = ps.executeUpdate();
+                    if (rows == 0) throw new SQLException("Book not found.");
+                }
 
-            conn.commit();
+                conn.commit();
+                referenceData.invalidateLanguages();
+                authorLines.invalidate(bookId);
+                return true;
+            }
+        }, deleted -> {
+            if (!deleted) {
+                showAlert("Cannot Delete",
+                        "This book has active loans. Please return all copies first.",
+                        Alert.AlertType.WARNING);
+                return;
+            }
             showAlert("Success", "Book deleted successfully!", Alert.AlertType.INFORMATION);
             refreshBooks();
             loadStatistics();
-
-        } catch (SQLException e) {
+        }, e -> {
             e.printStackTrace();
             showAlert("Error", "Failed to delete book: " + e.getMessage(), Alert.AlertType.ERROR);
-        }
+        });
     }
 
 
@@ -1055,18 +1139,22 @@ public class AdminDashboardController implements DashboardController {
         confirmAlert.setContentText("Are you sure you want to delete the user: " + user.getFullName() + "?");
 
         if (confirmAlert.showAndWait().orElse(ButtonType.CANCEL) == ButtonType.OK) {
-            if (userDAO.delete(user.getUsersId())) {
-                showAlert("Success", "User deleted successfully!", Alert.AlertType.INFORMATION);
-                refreshUsers();
-                loadStatistics();
-            } else {
-                showAlert("Error", "Failed to delete user.", Alert.AlertType.ERROR);
-            }
+            int userId = user.getUsersId();
+            background.submitWrite("deleteUser", () -> userDAO.delete(userId), deleted -> {
+                if (deleted) {
+                    showAlert("Success", "User deleted successfully!", Alert.AlertType.INFORMATION);
+                    refreshUsers();
+                    loadStatistics();
+                } else {
+                    showAlert("Error", "Failed to delete user.", Alert.AlertType.ERROR);
+                }
+            }, Throwable::printStackTrace);
         }
     }
 
     @FXML
     private void searchBooks() {
+        searchDebouncer.cancel(); // an explicit search supersedes a pending type-ahead one
         String q = (searchField != null && searchField.getText() != null)
                 ? searchField.getText().trim()
                 : "";
@@ -1076,77 +1164,28 @@ public class AdminDashboardController implements DashboardController {
             return;
         }
 
-        copyCountByBookId.clear();
-
-        String like = "%" + q + "%";
-
-        String sql = """
-        SELECT b.*, p.pub_name, COUNT(bc.copies_id) AS copy_count
-        FROM books b
-        LEFT JOIN publishers p   ON b.publishers_id = p.publishers_id
-        LEFT JOIN book_copies bc ON b.books_id      = bc.books_id
-        LEFT JOIN book_authors ba ON ba.books_id    = b.books_id
-        LEFT JOIN authors a       ON a.authors_id   = ba.authors_id
-        LEFT JOIN book_genres bg  ON bg.books_id    = b.books_id
-        LEFT JOIN genres g        ON g.genres_id    = bg.genres_id
-        WHERE
-            b.title ILIKE ? OR
-            b.isbn ILIKE ? OR
-            COALESCE(p.pub_name, '') ILIKE ? OR
-            COALESCE(a.full_name, '') ILIKE ? OR
-            COALESCE(g.gen_name, '') ILIKE ? OR
-            COALESCE(b.language, '') ILIKE ? OR
-            COALESCE(CAST(b.publication_year AS TEXT), '') ILIKE ?
-        GROUP BY b.books_id, p.pub_name
-        ORDER BY b.title
-    """;
-
-        try (Connection conn = DatabaseUtil.getConnection();
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-
-            for (int i = 1; i <= 7; i++) ps.setString(i, like);
-
-            try (ResultSet rs = ps.executeQuery()) {
-                ObservableList<BookEntity> books = FXCollections.observableArrayList();
-                while (rs.next()) {
-                    BookEntity book = new BookEntity();
-                    int bookId = rs.getInt("books_id");
-                    book.setBooksId(bookId);
-                    book.setTitle(rs.getString("title"));
-                    book.setIsbn(rs.getString("isbn"));
-                    book.setLanguage(rs.getString("language"));
-
-                    try {
-                        int yr = rs.getInt("publication_year");
-                        if (!rs.wasNull()) book.setPublicationYear(yr);
-                    } catch (SQLException ignore) {}
-
-                    book.setSummary(rs.getString("summary"));
-                    book.setImagePath(rs.getString("image_path"));
-
-                    int cnt = 0;
-                    try { cnt = rs.getInt("copy_count"); if (rs.wasNull()) cnt = 0; } catch (SQLException ignore) {}
-                    copyCountByBookId.put(bookId, cnt);
-
-                    PublisherEntity publisher = new PublisherEntity();
-                    publisher.setPubName(rs.getString("pub_name"));
-                    book.setPublisher(publisher);
-
-                    books.add(book);
-                }
-                booksTable.setItems(books);
-                booksTable.refresh();
+        // same key as the books pager: whichever ran last wins the table, and a superseded
+        // search has its statement cancelled on the server
+        booksPager.suspend();
+        background.submitCancellable("books", cancel -> {
+            BookRows rows = new BookRows();
+            for (BookSearchService.BookHit hit : bookSearch.search(q, cancel)) {
+                rows.books.add(hit.book);
+                rows.copyCounts.put(hit.book.getBooksId(), hit.copyCount);
             }
-        } catch (SQLException e) {
+            return rows;
+        }, this::showBookRows, e -> {
             e.printStackTrace();
             showAlert("Search Error", "Failed to search books: " + e.getMessage(), Alert.AlertType.ERROR);
-        }
+        });
     }
 
 
 
     @FXML
     private void handleLogout() {
+        searchDebouncer.cancel();
+        background.cancelAll();
         javafx.application.Platform.runLater(() -> {
             Stage oldStage = (Stage) userLabel.getScene().getWindow();
             oldStage.hide();
@@ -1198,15 +1237,20 @@ public class AdminDashboardController implements DashboardController {
     // ======== Dynamic analytics cards in the "Reports & Analytics" tab ========
     @FXML
     private void loadRequestCards() {
-        try {
-            loadAnalyticsCards(analyticsService.loadStats());
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        loadStatistics();
     }
 
-    private void loadAnalyticsCards(DashboardStats stats) {
+    // Reports tab "Refresh": also re-reads the schema in case tables changed under us, and brings the
+    // leaderboards up to date instead of waiting for their scheduled refresh
+    @FXML
+    private void refreshAnalytics() {
+        AnalyticsService.refreshSchema();
+        loadStatistics(true);
+    }
+
+    private void loadAnalyticsCards(AnalyticsSnapshot snapshot, int windowDays) {
         if (requestCardsContainer == null) return;
+        DashboardStats stats = snapshot.stats;
         requestCardsContainer.getChildren().clear();
 
         // Inventory Snapshot
@@ -1217,8 +1261,7 @@ public class AdminDashboardController implements DashboardController {
         requestCardsContainer.getChildren().add(createAnalyticsCard("Inventory Snapshot", inventoryText, "📚"));
 
         // Overdue Snapshot
-        long maxOver = 0;
-        try { maxOver = analyticsService.maxOverdueDays(); } catch (SQLException ignore) {}
+        long maxOver = snapshot.maxOverdueDays;
         String overdueText = String.format(
                 "Overdue Loans: %d%nMax Overdue: %d day(s)",
                 stats.overdueLoans, maxOver
@@ -1227,38 +1270,68 @@ public class AdminDashboardController implements DashboardController {
 
         // Top Borrowed Books
         StringBuilder topBooks = new StringBuilder();
-        try {
-            List<TopBook> books = analyticsService.topBorrowedBooks(5);
-            if (books.isEmpty()) topBooks.append("No borrowing history yet.");
-            else {
-                int i = 1;
-                for (TopBook b : books) {
-                    topBooks.append(i++).append(". ")
-                            .append(b.title).append(" — ")
-                            .append(b.timesBorrowed).append(" loan(s)\n");
-                }
+        List<TopBook> books = snapshot.topBooks;
+        if (books == null) topBooks.append("Failed to load.");
+        else if (books.isEmpty()) topBooks.append("No borrowing history yet.");
+        else {
+            int i = 1;
+            for (TopBook b : books) {
+                topBooks.append(i++).append(". ")
+                        .append(b.title).append(" — ")
+                        .append(b.timesBorrowed).append(" loan(s)\n");
             }
-        } catch (SQLException ignore) { topBooks.append("Failed to load."); }
-        requestCardsContainer.getChildren().add(createAnalyticsCard("Top Borrowed Books", topBooks.toString().trim(), "🏆"));
+        }
+        requestCardsContainer.getChildren().add(createAnalyticsCard("Top Borrowed Books · " + windowLabel(windowDays),
+                topBooks.toString().trim(), "🏆", staleness(snapshot.topBooksAsOf)));
 
         // Most Active Borrowers
         StringBuilder topUsers = new StringBuilder();
-        try {
-            List<TopBorrower> users = analyticsService.topActiveBorrowers(5);
-            if (users.isEmpty()) topUsers.append("No borrowing history yet.");
-            else {
-                int i = 1;
-                for (TopBorrower u : users) {
-                    topUsers.append(i++).append(". ")
-                            .append(u.name).append(" — ")
-                            .append(u.loansCount).append(" loan(s)\n");
-                }
+        List<TopBorrower> users = snapshot.topBorrowers;
+        if (users == null) topUsers.append("Failed to load.");
+        else if (users.isEmpty()) topUsers.append("No borrowing history yet.");
+        else {
+            int i = 1;
+            for (TopBorrower u : users) {
+                topUsers.append(i++).append(". ")
+                        .append(u.name).append(" — ")
+                        .append(u.loansCount).append(" loan(s)\n");
             }
-        } catch (SQLException ignore) { topUsers.append("Failed to load."); }
-        requestCardsContainer.getChildren().add(createAnalyticsCard("Most Active Borrowers", topUsers.toString().trim(), "👤"));
+        }
+        requestCardsContainer.getChildren().add(createAnalyticsCard("Most Active Borrowers · " + windowLabel(windowDays),
+                topUsers.toString().trim(), "👤", staleness(snapshot.topBorrowersAsOf)));
+
+        // Background Jobs (this instance's runs only)
+        List<JobScheduler.JobStats> jobs = MaintenanceJobs.getStats();
+        if (!jobs.isEmpty()) {
+            StringBuilder jobsText = new StringBuilder();
+            for (JobScheduler.JobStats j : jobs) {
+                jobsText.append(j.name).append(" — ");
+                if (j.runs == 0) jobsText.append("not run yet");
+                else jobsText.append(j.runs).append(" run(s), last ").append(j.lastMillis)
+                        .append(" ms, avg ").append(j.avgMillis()).append(" ms, max ").append(j.maxMillis).append(" ms");
+                if (j.skipped > 0) jobsText.append(", ").append(j.skipped).append(" skipped");
+                if (j.failures > 0) jobsText.append(", ").append(j.failures).append(" failed");
+                if (j.lastError != null) jobsText.append(" (last error: ").append(j.lastError).append(")");
+                jobsText.append("\n");
+            }
+            requestCardsContainer.getChildren().add(createAnalyticsCard("Background Jobs", jobsText.toString().trim(), "⚙"));
+        }
+    }
+
+    private static String staleness(Instant asOf) {
+        if (asOf == null) return null;
+        long minutes = ChronoUnit.MINUTES.between(asOf, Instant.now());
+        if (minutes < 1) return "Updated just now";
+        if (minutes < 60) return "Updated " + minutes + " min ago";
+        if (minutes < 48 * 60) return "Updated " + (minutes / 60) + " h ago";
+        return "Updated " + (minutes / (24 * 60)) + " days ago";
     }
 
     private VBox createAnalyticsCard(String title, String description, String icon) {
+        return createAnalyticsCard(title, description, icon, null);
+    }
+
+    private VBox createAnalyticsCard(String title, String description, String icon, String footnote) {
         VBox card = new VBox(10);
         card.getStyleClass().add("request-card");
         card.setStyle("-fx-background-color: white; -fx-background-radius: 8; -fx-padding: 15; -fx-effect: dropshadow(gaussian, rgba(0,0,0,0.1), 3, 0, 0, 0);");
@@ -1279,6 +1352,12 @@ public class AdminDashboardController implements DashboardController {
         descLabel.setWrapText(true);
 
         card.getChildren().addAll(header, descLabel);
+
+        if (footnote != null) {
+            Label footLabel = new Label(footnote);
+            footLabel.setStyle("-fx-font-size: 12px; -fx-text-fill: #7f8c8d;");
+            card.getChildren().add(footLabel);
+        }
         return card;
     }
     // ==========================================================================
@@ -1293,16 +1372,17 @@ public class AdminDashboardController implements DashboardController {
             return;
         }
 
+        LocalDate birthDate;
         try {
-            LocalDate birthDate = null;
-            if (!birthDateStr.isEmpty()) {
-                birthDate = LocalDate.parse(birthDateStr);
-            }
+            birthDate = birthDateStr.isEmpty() ? null : LocalDate.parse(birthDateStr);
+        } catch (DateTimeParseException e) {
+            showAuthorMessage("Error: " + e.getMessage(), true);
+            return;
+        }
 
-            if (authorExists(fullName, birthDate)) {
-                showAuthorMessage("Author with this name and birth date already exists.", true);
-                return;
-            }
+        // new author's id, or -1 when it already exists
+        background.submitWrite("submitAuthor", () -> {
+            if (authorExists(fullName, birthDate)) return -1;
 
             String sql = "INSERT INTO authors (full_name, birth_date) VALUES (?, ?) RETURNING authors_id";
             try (Connection conn = DatabaseUtil.getConnection();
@@ -1313,33 +1393,33 @@ public class AdminDashboardController implements DashboardController {
                 else stmt.setNull(2, Types.DATE);
 
                 try (ResultSet rs = stmt.executeQuery()) {
-                    if (rs.next()) {
-                        int newId = rs.getInt(1);
-
-                        // Add to the selectedAuthors list immediately
-                        AuthorEntity newAuthor = new AuthorEntity();
-                        newAuthor.setAuthorsId(newId);
-                        newAuthor.setFullName(fullName);
-                        newAuthor.setBirthDate(birthDate);
-                        if (!containsAuthorId(newId)) selectedAuthors.add(newAuthor);
-
-                        // Refresh the dropdown
-                        loadAuthors();
-                        if (authorCombo != null) authorCombo.getSelectionModel().clearSelection();
-
-                        showAuthorMessage("Author added successfully!", false);
-                        clearAuthorForm();
-                        addAuthorForm.setVisible(false);
-                    } else {
-                        showAuthorMessage("Failed to add author.", true);
-                    }
+                    rs.next();
+                    return rs.getInt(1);
                 }
             }
-
-        } catch (Exception e) {
+        }, newId -> {
+            if (newId < 0) {
+                showAuthorMessage("Author with this name and birth date already exists.", true);
+                return;
+            }
+            // Add to the selectedAuthors list immediately
+            AuthorEntity newAuthor = new AuthorEntity();
+            newAuthor.setAuthorsId(newId);
+            newAuthor.setFullName(fullName);
+            newAuthor.setBirthDate(birthDate);
+            if (!containsAuthorId(newId)) selectedAuthors.add(newAuthor);
+
+            // Refresh the dropdown
+            loadAuthors();
+            if (authorCombo != null) authorCombo.getSelectionModel().clearSelection();
+
+            showAuthorMessage("Author added successfully!", false);
+            clearAuthorForm();
+            addAuthorForm.setVisible(false);
+        }, e -> {
             showAuthorMessage("Error: " + e.getMessage(), true);
             e.printStackTrace();
-        }
+        });
     }
 
     @FXML
@@ -1352,34 +1432,33 @@ public class AdminDashboardController implements DashboardController {
             return;
         }
 
-        try {
-            if (genreExists(genreName)) {
-                showGenreMessage("Genre with this name already exists.", true);
-                return;
-            }
+        String desc = description.isEmpty() ? null : description;
+        // false when a genre with that name already exists
+        background.submitWrite("submitGenre", () -> {
+            if (genreExists(genreName)) return false;
 
             String sql = "INSERT INTO genres (gen_name, genre_desc) VALUES (?, ?)";
             try (Connection conn = DatabaseUtil.getConnection();
                  PreparedStatement stmt = conn.prepareStatement(sql)) {
-
                 stmt.setString(1, genreName);
-                stmt.setString(2, description.isEmpty() ? null : description);
-
-                int rowsAffected = stmt.executeUpdate();
-                if (rowsAffected > 0) {
-                    showGenreMessage("Genre added successfully!", false);
-                    clearGenreForm();
-                    addGenreForm.setVisible(false);
-                    loadGenres();
-                } else {
-                    showGenreMessage("Failed to add genre.", true);
-                }
+                stmt.setString(2, desc);
+                stmt.executeUpdate();
             }
-
-        } catch (SQLException e) {
+            referenceData.invalidateGenres();
+            return true;
+        }, added -> {
+            if (!added) {
+                showGenreMessage("Genre with this name already exists.", true);
+                return;
+            }
+            showGenreMessage("Genre added successfully!", false);
+            clearGenreForm();
+            addGenreForm.setVisible(false);
+            loadGenres();
+        }, e -> {
             showGenreMessage("Database error: " + e.getMessage(), true);
             e.printStackTrace();
-        }
+        });
     }
 
     @FXML
@@ -1485,218 +1564,245 @@ public class AdminDashboardController implements DashboardController {
         }
     }
 
+    private static final class AnalyticsSnapshot {
+        DashboardStats stats;
+        long maxOverdueDays;
+        List<TopBook> topBooks;          // null = failed to load
+        List<TopBorrower> topBorrowers;  // null = failed to load
+        Instant topBooksAsOf, topBorrowersAsOf; // last leaderboard refresh; null = computed live
+    }
+    private static final class BookRows {
+        final List<BookEntity> books = new ArrayList<>();
+        final Map<Integer, Integer> copyCounts = new HashMap<>();
+    }
+    // Snapshot of the add-book form so the inserts can run off the FX thread
+    private static final class BookForm {
+        String title, isbn, language, summary;
+        Integer year;
+        int publishersId, copies;
+        File imageFile;
+        List<AuthorEntity> authors;
+        List<GenreEntity> genres;
+    }
+
     // ========= ANALYTICS SERVICE (uses DatabaseUtil; auto-detects schema) =========
     private static final class AnalyticsService {
+        private static final Logger LOGGER = Logger.getLogger(AnalyticsService.class.getName());
 
-        DashboardStats loadStats() throws SQLException {
-            try (Connection conn = DatabaseUtil.getConnection()) {
-                long totalBooks   = scalarLong(conn, "SELECT COUNT(*) FROM books");
-                long totalUsers   = scalarLong(conn, "SELECT COUNT(*) FROM users");
-                long activeLoans  = scalarLong(conn, "SELECT COUNT(*) FROM loans WHERE returned_at IS NULL");
-                long overdueLoans = scalarLong(conn, "SELECT COUNT(*) FROM loans WHERE returned_at IS NULL AND due_date < CURRENT_DATE");
+        // Resolved once per process from a single information_schema query; refreshSchema() drops it
+        private static volatile SchemaInfo schema;
 
-                long totalCopies     = hasTable(conn, "book_copies") ? scalarLong(conn, "SELECT COUNT(*) FROM book_copies") : 0L;
-                long availableCopies = hasTable(conn, "book_copies") ? scalarLong(conn, "SELECT COUNT(*) FROM book_copies WHERE status = 'AVAILABLE'") : 0L;
+        static void refreshSchema() {
+            schema = null;
+        }
 
-                return new DashboardStats(totalBooks, totalUsers, activeLoans, overdueLoans, totalCopies, availableCopies);
+        private static SchemaInfo schema(Connection conn) throws SQLException {
+            SchemaInfo s = schema;
+            if (s == null) {
+                s = SchemaInfo.load(conn);
+                schema = s;
+                LOGGER.info("[TopBooks] Path: " + (s.topBooksPath != null ? s.topBooksPath : "none (no loan -> book link found)"));
             }
+            return s;
         }
 
-        List<TopBook> topBorrowedBooks(int limit) throws SQLException {
-            if (limit <= 0) limit = 5;
+        /**
+         * Everything the Reports tab shows in one round trip: the counters come from a single statement
+         * of FILTER aggregates, and the two leaderboards ride along in the same PreparedStatement, which
+         * the driver sends as one pipelined batch on one connection.
+         *
+         * @param windowDays leaderboard window, one of {@link Leaderboards#WINDOWS} (0 = all time); ignored
+         *                   when the materialized leaderboards are missing and the live queries are used
+         */
+        AnalyticsSnapshot loadSnapshot(int topN, int windowDays) throws SQLException {
+            if (topN <= 0) topN = 5;
 
             try (Connection conn = DatabaseUtil.getConnection()) {
-
-                // Print schema info once to the console so we see what's available
-                debugTable(conn, "loans");
-                debugTable(conn, "loan_items");
-                debugTable(conn, "book_copies");
-
-                // 1) loans.copies_id -> book_copies -> books
-                if (hasColumn(conn, "loans", "copies_id") &&
-                        hasTable(conn, "book_copies") && hasColumn(conn, "book_copies", "books_id")) {
-                    System.out.println("[TopBooks] Path: loans.copies_id -> book_copies -> books");
-                    String sql = "SELECT b.books_id, b.title, COUNT(*) AS times " +
-                            "FROM loans l " +
-                            "JOIN book_copies bc ON bc.copies_id = l.copies_id " +
-                            "JOIN books b ON b.books_id = bc.books_id " +
-                            "GROUP BY b.books_id, b.title " +
-                            "ORDER BY times DESC, b.title ASC " +
-                            "LIMIT ?";
-                    return runTopBooksQuery(conn, sql, limit);
-                }
-
-                // 1b) loans.copy_id (singular) -> book_copies -> books
-                if (hasColumn(conn, "loans", "copy_id") &&
-                        hasTable(conn, "book_copies") && hasColumn(conn, "book_copies", "books_id")) {
-                    System.out.println("[TopBooks] Path: loans.copy_id -> book_copies -> books");
-                    String sql = "SELECT b.books_id, b.title, COUNT(*) AS times " +
-                            "FROM loans l " +
-                            "JOIN book_copies bc ON bc.copies_id = l.copy_id " +
-                            "JOIN books b ON b.books_id = bc.books_id " +
-                            "GROUP BY b.books_id, b.title " +
-                            "ORDER BY times DESC, b.title ASC " +
-                            "LIMIT ?";
-                    return runTopBooksQuery(conn, sql, limit);
-                }
-
-                // 2) loans.book_copies_id -> book_copies -> books
-                if (hasColumn(conn, "loans", "book_copies_id") &&
-                        hasTable(conn, "book_copies") && hasColumn(conn, "book_copies", "books_id")) {
-                    System.out.println("[TopBooks] Path: loans.book_copies_id -> book_copies -> books");
-                    String sql = "SELECT b.books_id, b.title, COUNT(*) AS times " +
-                            "FROM loans l " +
-                            "JOIN book_copies bc ON bc.copies_id = l.book_copies_id " +
-                            "JOIN books b ON b.books_id = bc.books_id " +
-                            "GROUP BY b.books_id, b.title " +
-                            "ORDER BY times DESC, b.title ASC " +
-                            "LIMIT ?";
-                    return runTopBooksQuery(conn, sql, limit);
-                }
-
-                // 3) loans.books_id -> books
-                if (hasColumn(conn, "loans", "books_id")) {
-                    System.out.println("[TopBooks] Path: loans.books_id -> books");
-                    String sql = "SELECT b.books_id, b.title, COUNT(*) AS times " +
-                            "FROM loans l " +
-                            "JOIN books b ON b.books_id = l.books_id " +
-                            "GROUP BY b.books_id, b.title " +
-                            "ORDER BY times DESC, b.title ASC " +
-                            "LIMIT ?";
-                    return runTopBooksQuery(conn, sql, limit);
-                }
-
-                // 3b) loans.book_id (singular) -> books
-                if (hasColumn(conn, "loans", "book_id")) {
-                    System.out.println("[TopBooks] Path: loans.book_id -> books");
-                    String sql = "SELECT b.books_id, b.title, COUNT(*) AS times " +
-                            "FROM loans l " +
-                            "JOIN books b ON b.books_id = l.book_id " +
-                            "GROUP BY b.books_id, b.title " +
-                            "ORDER BY times DESC, b.title ASC " +
-                            "LIMIT ?";
-                    return runTopBooksQuery(conn, sql, limit);
-                }
-
-                // 4) loan_items.copies_id -> book_copies -> books
-                if (hasTable(conn, "loan_items")) {
-                    if (hasColumn(conn, "loan_items", "copies_id") &&
-                            hasTable(conn, "book_copies") && hasColumn(conn, "book_copies", "books_id")) {
-                        System.out.println("[TopBooks] Path: loan_items.copies_id -> book_copies -> books");
-                        String sql = "SELECT b.books_id, b.title, COUNT(*) AS times " +
-                                "FROM loan_items li " +
-                                "JOIN book_copies bc ON bc.copies_id = li.copies_id " +
-                                "JOIN books b ON b.books_id = bc.books_id " +
-                                "GROUP BY b.books_id, b.title " +
-                                "ORDER BY times DESC, b.title ASC " +
-                                "LIMIT ?";
-                        return runTopBooksQuery(conn, sql, limit);
+                SchemaInfo info = schema(conn);
+                try (PreparedStatement ps = conn.prepareStatement(info.dashboardSql)) {
+                    int i = 1;
+                    if (info.leaderboards) {
+                        ps.setInt(i++, windowDays);
+                        ps.setInt(i++, topN);
+                        ps.setInt(i++, windowDays);
+                        ps.setInt(i, topN);
+                    } else {
+                        if (info.topBooksSql != null) ps.setInt(i++, topN);
+                        ps.setInt(i, topN);
                     }
 
-                    // 4b) loan_items.book_id / books_id -> books
-                    if (hasColumn(conn, "loan_items", "books_id") || hasColumn(conn, "loan_items", "book_id")) {
-                        String bookFk = hasColumn(conn, "loan_items", "books_id") ? "books_id" : "book_id";
-                        System.out.println("[TopBooks] Path: loan_items." + bookFk + " -> books");
-                        String sql = "SELECT b.books_id, b.title, COUNT(*) AS times " +
-                                "FROM loan_items li " +
-                                "JOIN books b ON b.books_id = li." + bookFk + " " +
-                                "GROUP BY b.books_id, b.title " +
-                                "ORDER BY times DESC, b.title ASC " +
-                                "LIMIT ?";
-                        return runTopBooksQuery(conn, sql, limit);
+                    AnalyticsSnapshot snapshot = new AnalyticsSnapshot();
+                    ps.execute();
+                    try (ResultSet rs = ps.getResultSet()) {
+                        rs.next();
+                        snapshot.stats = new DashboardStats(
+                                rs.getLong("total_books"), rs.getLong("total_users"),
+                                rs.getLong("active_loans"), rs.getLong("overdue_loans"),
+                                rs.getLong("total_copies"), rs.getLong("available_copies"));
+                        snapshot.maxOverdueDays = rs.getLong("max_overdue_days");
                     }
-                }
 
-                System.out.println("[TopBooks] No compatible path found. Returning empty list.");
-                return new ArrayList<>();
-            }
-        }
+                    snapshot.topBooks = new ArrayList<>();
+                    if (info.leaderboards || info.topBooksSql != null) {
+                        ps.getMoreResults();
+                        try (ResultSet rs = ps.getResultSet()) {
+                            while (rs.next()) {
+                                snapshot.topBooks.add(new TopBook(rs.getLong("books_id"), rs.getString("title"), rs.getLong("times")));
+                            }
+                        }
+                    }
 
-        // add this helper inside AnalyticsService (used above)
-        private static void debugTable(Connection conn, String table) {
-            try {
-                if (!hasTable(conn, table)) {
-                    System.out.println("[Schema] Table not found: " + table);
-                    return;
-                }
-                System.out.print("[Schema] " + table + " columns:");
-                DatabaseMetaData md = conn.getMetaData();
-                try (ResultSet rs = md.getColumns(null, null, table, null)) {
-                    boolean any = false;
-                    while (rs.next()) {
-                        any = true;
-                        System.out.print(" " + rs.getString("COLUMN_NAME"));
+                    snapshot.topBorrowers = new ArrayList<>();
+                    ps.getMoreResults();
+                    try (ResultSet rs = ps.getResultSet()) {
+                        while (rs.next()) {
+                            snapshot.topBorrowers.add(new TopBorrower(rs.getLong("users_id"), rs.getString("name"), rs.getLong("cnt")));
+                        }
                     }
-                    if (!any) {
-                        try (ResultSet rs2 = md.getColumns(null, null, table.toUpperCase(), null)) {
-                            while (rs2.next()) System.out.print(" " + rs2.getString("COLUMN_NAME"));
+
+                    if (info.leaderboards) {
+                        ps.getMoreResults();
+                        try (ResultSet rs = ps.getResultSet()) {
+                            while (rs.next()) {
+                                Timestamp at = rs.getTimestamp("refreshed_at");
+                                if ("library_top_books".equals(rs.getString("name"))) snapshot.topBooksAsOf = at.toInstant();
+                                else if ("library_top_borrowers".equals(rs.getString("name"))) snapshot.topBorrowersAsOf = at.toInstant();
+                            }
                         }
                     }
+                    return snapshot;
                 }
-                System.out.println();
-            } catch (SQLException ignore) {}
+            }
         }
+    }
 
-        List<TopBorrower> topActiveBorrowers(int limit) throws SQLException {
-            if (limit <= 0) limit = 5;
-            String sql = "SELECT u.users_id, COALESCE(TRIM(u.first_name || ' ' || u.last_name), u.username) AS name, COUNT(l.loans_id) AS cnt " +
-                    "FROM loans l JOIN users u ON u.users_id = l.users_id " +
-                    "GROUP BY u.users_id, name " +
-                    "ORDER BY cnt DESC, name ASC LIMIT ?";
-            try (Connection conn = DatabaseUtil.getConnection();
-                 PreparedStatement ps = conn.prepareStatement(sql)) {
-                ps.setInt(1, limit);
-                try (ResultSet rs = ps.executeQuery()) {
-                    List<TopBorrower> out = new ArrayList<>();
-                    while (rs.next()) out.add(new TopBorrower(rs.getLong("users_id"), rs.getString("name"), rs.getLong("cnt")));
-                    return out;
-                }
-            }
+    /** Which analytics tables/columns exist, plus the loan -> book join path picked from them. */
+    private static final class SchemaInfo {
+        private static final String[] TABLES = {"loans", "loan_items", "book_copies", "library_counters", "library_leaderboards"};
+
+        final Map<String, Set<String>> columns;
+        final String topBooksPath;  // human-readable, for the log
+        final String topBooksSql;   // null = no compatible path
+        final boolean leaderboards; // materialized leaderboards (migration V5) are there
+        final String dashboardSql;  // counters; top books; top borrowers; leaderboard refresh times
+
+        private SchemaInfo(Map<String, Set<String>> columns) {
+            this.columns = columns;
+            String[] path = resolveTopBooks();
+            this.topBooksPath = path != null ? path[0] : null;
+            this.topBooksSql = path != null ? path[1] : null;
+            this.leaderboards = hasTable("library_leaderboards");
+            this.dashboardSql = leaderboards
+                    ? countersSql() + ";\n" + LEADERBOARD_BOOKS_SQL + ";\n" + LEADERBOARD_BORROWERS_SQL + ";\n" + LEADERBOARD_STAMPS_SQL
+                    : countersSql() + ";\n" + (topBooksSql != null ? topBooksSql + ";\n" : "") + TOP_BORROWERS_SQL;
         }
 
-        long maxOverdueDays() throws SQLException {
-            String sql = "SELECT COALESCE(MAX((CURRENT_DATE - due_date)), 0) FROM loans WHERE returned_at IS NULL AND due_date < CURRENT_DATE";
-            try (Connection conn = DatabaseUtil.getConnection();
-                 Statement st = conn.createStatement();
-                 ResultSet rs = st.executeQuery(sql)) {
-                rs.next(); return rs.getLong(1);
+        private static final String LEADERBOARD_BOOKS_SQL =
+                "SELECT books_id, title, times FROM library_top_books WHERE window_days = ? ORDER BY pos LIMIT ?";
+        private static final String LEADERBOARD_BORROWERS_SQL =
+                "SELECT users_id, name, loans_count AS cnt FROM library_top_borrowers WHERE window_days = ? ORDER BY pos LIMIT ?";
+        private static final String LEADERBOARD_STAMPS_SQL =
+                "SELECT name, refreshed_at FROM library_leaderboards";
+
+        private static final String TOP_BORROWERS_SQL =
+                "SELECT u.users_id, COALESCE(TRIM(u.first_name || ' ' || u.last_name), u.username) AS name, COUNT(l.loans_id) AS cnt " +
+                "FROM loans l JOIN users u ON u.users_id = l.users_id " +
+                "GROUP BY u.users_id, name " +
+                "ORDER BY cnt DESC, name ASC LIMIT ?";
+
+        // Counters maintained by triggers (migration V4, sharded by V11) are a small sum; overdue depends on
+        // the date, so it is counted from the partial index on active loans.
+        private String countersSql() {
+            if (hasTable("library_counters")) {
+                return "SELECT k.total_books, k.total_users, k.active_loans, o.overdue_loans, o.max_overdue_days, " +
+                        "       k.total_copies, k.available_copies " +
+                        "FROM (SELECT COALESCE(SUM(value) FILTER (WHERE name = 'books'), 0) AS total_books, " +
+                        "             COALESCE(SUM(value) FILTER (WHERE name = 'users'), 0) AS total_users, " +
+                        "             COALESCE(SUM(value) FILTER (WHERE name = 'active_loans'), 0) AS active_loans, " +
+                        "             COALESCE(SUM(value) FILTER (WHERE name = 'book_copies'), 0) AS total_copies, " +
+                        "             COALESCE(SUM(value) FILTER (WHERE name = 'available_copies'), 0) AS available_copies " +
+                        "      FROM library_counters) k " +
+                        "CROSS JOIN (SELECT COUNT(*) AS overdue_loans, " +
+                        "                   COALESCE(MAX(CURRENT_DATE - due_date), 0) AS max_overdue_days " +
+                        "            FROM loans WHERE returned_at IS NULL AND due_date < CURRENT_DATE) o";
             }
+
+            // No counters table: one pass over loans and one over book_copies
+            boolean copies = hasTable("book_copies");
+            return "SELECT (SELECT COUNT(*) FROM books) AS total_books, " +
+                    "       (SELECT COUNT(*) FROM users) AS total_users, " +
+                    "       l.active_loans, l.overdue_loans, l.max_overdue_days, " +
+                    (copies ? "       c.total_copies, c.available_copies "
+                            : "       0 AS total_copies, 0 AS available_copies ") +
+                    "FROM (SELECT COUNT(*) FILTER (WHERE returned_at IS NULL) AS active_loans, " +
+                    "             COUNT(*) FILTER (WHERE returned_at IS NULL AND due_date < CURRENT_DATE) AS overdue_loans, " +
+                    "             COALESCE(MAX(CURRENT_DATE - due_date) " +
+                    "                      FILTER (WHERE returned_at IS NULL AND due_date < CURRENT_DATE), 0) AS max_overdue_days " +
+                    "      FROM loans) l" +
+                    (copies ? " CROSS JOIN (SELECT COUNT(*) AS total_copies, " +
+                              "                    COUNT(*) FILTER (WHERE status = 'AVAILABLE') AS available_copies " +
+                              "             FROM book_copies) c" : "");
         }
 
-        /* ------------------------- helpers ------------------------- */
-        private List<TopBook> runTopBooksQuery(Connection conn, String sql, int limit) throws SQLException {
+        static SchemaInfo load(Connection conn) throws SQLException {
+            Map<String, Set<String>> columns = new HashMap<>();
+            String sql = "SELECT table_name, column_name FROM information_schema.columns " +
+                    "WHERE table_schema = current_schema() AND table_name = ANY(?)";
             try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                ps.setInt(1, Math.max(1, limit));
+                ps.setArray(1, conn.createArrayOf("text", TABLES));
                 try (ResultSet rs = ps.executeQuery()) {
-                    List<TopBook> out = new ArrayList<>();
                     while (rs.next()) {
-                        out.add(new TopBook(
-                                rs.getLong("books_id"),
-                                rs.getString("title"),
-                                rs.getLong("times")
-                        ));
+                        columns.computeIfAbsent(rs.getString(1).toLowerCase(), t -> new HashSet<>())
+                                .add(rs.getString(2).toLowerCase());
                     }
-                    return out;
                 }
             }
+            return new SchemaInfo(columns);
+        }
+
+        boolean hasTable(String table) {
+            return columns.containsKey(table);
         }
 
-        private static long scalarLong(Connection conn, String sql) throws SQLException {
-            try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery(sql)) { rs.next(); return rs.getLong(1); }
+        boolean hasColumn(String table, String column) {
+            return columns.getOrDefault(table, Set.of()).contains(column);
+        }
+
+        // Same preference order as before: loans via copies, loans direct, then loan_items
+        private String[] resolveTopBooks() {
+            boolean copies = hasColumn("book_copies", "books_id");
+            for (String fk : new String[]{"copies_id", "copy_id", "book_copies_id"}) {
+                if (copies && hasColumn("loans", fk)) return viaCopies("loans l", "l." + fk);
+            }
+            for (String fk : new String[]{"books_id", "book_id"}) {
+                if (hasColumn("loans", fk)) return direct("loans l", "l." + fk);
+            }
+            if (copies && hasColumn("loan_items", "copies_id")) return viaCopies("loan_items li", "li.copies_id");
+            for (String fk : new String[]{"books_id", "book_id"}) {
+                if (hasColumn("loan_items", fk)) return direct("loan_items li", "li." + fk);
+            }
+            return null;
         }
 
-        private static boolean hasTable(Connection conn, String table) throws SQLException {
-            DatabaseMetaData md = conn.getMetaData();
-            try (ResultSet rs = md.getTables(null, null, table, null)) { if (rs.next()) return true; }
-            try (ResultSet rs = md.getTables(null, null, table.toLowerCase(), null)) { if (rs.next()) return true; }
-            try (ResultSet rs = md.getTables(null, null, table.toUpperCase(), null)) { return rs.next(); }
+        private static String[] viaCopies(String from, String copyFk) {
+            return new String[]{from + " -> " + copyFk + " -> book_copies -> books",
+                    "SELECT b.books_id, b.title, COUNT(*) AS times " +
+                            "FROM " + from + " " +
+                            "JOIN book_copies bc ON bc.copies_id = " + copyFk + " " +
+                            "JOIN books b ON b.books_id = bc.books_id " +
+                            "GROUP BY b.books_id, b.title " +
+                            "ORDER BY times DESC, b.title ASC " +
+                            "LIMIT ?"};
         }
 
-        private static boolean hasColumn(Connection conn, String table, String column) throws SQLException {
-            DatabaseMetaData md = conn.getMetaData();
-            try (ResultSet rs = md.getColumns(null, null, table, column)) { if (rs.next()) return true; }
-            try (ResultSet rs = md.getColumns(null, null, table.toLowerCase(), column.toLowerCase())) { if (rs.next()) return true; }
-            try (ResultSet rs = md.getColumns(null, null, table.toUpperCase(), column.toUpperCase())) { return rs.next(); }
+        private static String[] direct(String from, String bookFk) {
+            return new String[]{from + " -> " + bookFk + " -> books",
+                    "SELECT b.books_id, b.title, COUNT(*) AS times " +
+                            "FROM " + from + " " +
+                            "JOIN books b ON b.books_id = " + bookFk + " " +
+                            "GROUP BY b.books_id, b.title " +
+                            "ORDER BY times DESC, b.title ASC " +
+                            "LIMIT ?"};
         }
     }
 
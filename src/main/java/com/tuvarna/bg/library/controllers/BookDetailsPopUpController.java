@@ -2,15 +2,16 @@ package com.tuvarna.bg.library.controllers;
 
 import com.tuvarna.bg.library.entity.BookEntity;
 import com.tuvarna.bg.library.entity.UserEntity;
+import com.tuvarna.bg.library.service.CoverImageService;
+import com.tuvarna.bg.library.service.ReservationEngine;
+import com.tuvarna.bg.library.util.BackgroundTasks;
 import com.tuvarna.bg.library.util.DatabaseUtil;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
-import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.stage.Stage;
 
 import java.sql.*;
-import java.time.LocalDateTime;
 
 public class BookDetailsPopUpController {
     @FXML private ImageView bookCoverImage;
@@ -20,6 +21,8 @@ public class BookDetailsPopUpController {
 
     private BookEntity book;
     private UserEntity currentUser;
+    private final BackgroundTasks background = new BackgroundTasks();
+    private final ReservationEngine reservationEngine = new ReservationEngine();
 
     public void setBook(BookEntity book) {
         this.book = book;
@@ -40,54 +43,10 @@ public class BookDetailsPopUpController {
         yearLabel.setText(book.getPublicationYear() != null ? book.getPublicationYear().toString() : "N/A");
         summaryArea.setText(book.getSummary());
 
-        // --- Robust cover loading ---
-        Image cover = null;
-        try {
-            String p = book.getImagePath();
-            java.util.List<String> candidates = new java.util.ArrayList<>();
-
-            if (p != null && !p.isBlank()) {
-                if (p.startsWith("http://") || p.startsWith("https://") || p.startsWith("file:")) {
-                    // already a URL
-                    candidates.add(p);
-                } else {
-                    // try as absolute/local file
-                    java.nio.file.Path abs = java.nio.file.Paths.get(p);
-                    candidates.add("file:" + (abs.isAbsolute() ? abs : abs.toAbsolutePath()));
-
-                    // also try library_images/<filename>
-                    java.nio.file.Path fn = abs.getFileName();
-                    if (fn != null) {
-                        candidates.add("file:" + java.nio.file.Paths.get("library_images", fn.toString()).toAbsolutePath());
-                    }
-                }
-            }
-
-            // try packaged resource by ISBN (optional)
-            if (book.getIsbn() != null && !book.getIsbn().isBlank()) {
-                java.net.URL byIsbn = getClass().getResource("/covers/" + book.getIsbn() + ".jpg");
-                if (byIsbn != null) candidates.add(byIsbn.toExternalForm());
-            }
-
-            // try each candidate until one works
-            for (String url : candidates) {
-                try {
-                    Image img = new Image(url, 240, 0, true, true);
-                    if (!img.isError()) { cover = img; break; }
-                } catch (Exception ignored) {}
-            }
-
-            // final placeholder (if you add one to resources)
-            if (cover == null) {
-                java.net.URL ph = getClass().getResource("/com/tuvarna/bg/library/images/placeholder.png");
-                if (ph != null) cover = new Image(ph.toExternalForm(), 240, 0, true, true);
-            }
-        } catch (Exception ignored) {}
-
         bookCoverImage.setPreserveRatio(true);
         bookCoverImage.setFitWidth(220);
         bookCoverImage.setFitHeight(300);
-        bookCoverImage.setImage(cover);
+        CoverImageService.getInstance().loadInto(bookCoverImage, book, 240);
 
         // Load additional details from database
         loadAuthorAndPublisher();
@@ -111,27 +70,30 @@ public class BookDetailsPopUpController {
         WHERE b.books_id = ?
         GROUP BY p.pub_name
     """;
-        try (Connection conn = DatabaseUtil.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setInt(1, book.getBooksId());
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    authorLabel.setText(rs.getString("authors"));
-                    publisherLabel.setText(rs.getString("publisher"));
-                } else {
-                    authorLabel.setText("Unknown Author");
-                    publisherLabel.setText("Unknown Publisher");
+        int bookId = book.getBooksId();
+        background.submit("authorAndPublisher", () -> {
+            try (Connection conn = DatabaseUtil.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setInt(1, bookId);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) return new String[]{rs.getString("authors"), rs.getString("publisher")};
+                    return new String[]{"Unknown Author", "Unknown Publisher"};
                 }
             }
-        } catch (SQLException e) {
+        }, names -> {
+            authorLabel.setText(names[0]);
+            publisherLabel.setText(names[1]);
+        }, e -> {
             e.printStackTrace();
             authorLabel.setText("Unknown Author");
             publisherLabel.setText("Unknown Publisher");
-        }
+        });
     }
 
     private void loadGenres() {
-        try (Connection conn = DatabaseUtil.getConnection();
+        int bookId = book.getBooksId();
+        background.submit("genres", () -> {
+            try (Connection conn = DatabaseUtil.getConnection();
              PreparedStatement stmt = conn.prepareStatement(
                      "SELECT g.gen_name " +
                              "FROM books b " +
@@ -139,30 +101,34 @@ public class BookDetailsPopUpController {
                              "LEFT JOIN genres g ON bg.genres_id = g.genres_id " +
                              "WHERE b.books_id = ?")) {
 
-            stmt.setInt(1, book.getBooksId());
-            StringBuilder genres = new StringBuilder();
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    if (genres.length() > 0) genres.append(", ");
-                    genres.append(rs.getString("gen_name"));
+                stmt.setInt(1, bookId);
+                StringBuilder genres = new StringBuilder();
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        if (genres.length() > 0) genres.append(", ");
+                        genres.append(rs.getString("gen_name"));
+                    }
                 }
+                return genres.length() > 0 ? genres.toString() : "No genres";
             }
-            genresLabel.setText(genres.length() > 0 ? genres.toString() : "No genres");
-        } catch (SQLException e) {
+        }, genresLabel::setText, e -> {
             e.printStackTrace();
             genresLabel.setText("No genres");
-        }
+        });
     }
 
     private void updateActionButtons() {
-        boolean hasAvailableCopies = checkBookAvailability(book.getBooksId());
-        boolean hasReservation = checkUserReservation(book.getBooksId());
+        int bookId = book.getBooksId();
+        background.submit("actions", () -> new boolean[]{checkBookAvailability(bookId), checkUserReservation(bookId)}, flags -> {
+            boolean hasAvailableCopies = flags[0];
+            boolean hasReservation = flags[1];
 
-        reserveButton.setDisable(hasReservation);
-        borrowButton.setDisable(!hasAvailableCopies);
+            reserveButton.setDisable(hasReservation);
+            borrowButton.setDisable(!hasAvailableCopies);
 
-        reserveButton.setText(hasReservation ? "Already Reserved" : "Reserve Book");
-        borrowButton.setText(hasAvailableCopies ? "Borrow Available Copy" : "No Copies Available");
+            reserveButton.setText(hasReservation ? "Already Reserved" : "Reserve Book");
+            borrowButton.setText(hasAvailableCopies ? "Borrow Available Copy" : "No Copies Available");
+        });
     }
 
     private boolean checkBookAvailability(int bookId) {
@@ -202,21 +168,20 @@ public class BookDetailsPopUpController {
             return;
         }
 
-        String sql = "INSERT INTO reservations (user_id, book_id, created_at, status) VALUES (?, ?, ?, 'PENDING')";
-        try (Connection conn = DatabaseUtil.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setInt(1, currentUser.getUsersId());
-            stmt.setInt(2, book.getBooksId());
-            stmt.setTimestamp(3, Timestamp.valueOf(LocalDateTime.now()));
-            stmt.executeUpdate();
-
-            showAlert("Success", "Book reserved successfully!", Alert.AlertType.INFORMATION);
+        int userId = currentUser.getUsersId();
+        int bookId = book.getBooksId();
+        background.submitWrite("reserve", () -> reservationEngine.reserve(userId, bookId), queued -> {
+            String message;
+            if ("READY".equals(queued.status)) message = "Book reserved! A copy is waiting for you at the desk.";
+            else if (queued.position <= 1) message = "Book reserved! You'll be next in line when a copy is returned.";
+            else message = "Book reserved! You are number " + queued.position + " in the queue.";
+            showAlert("Success", message,
+                    Alert.AlertType.INFORMATION);
             updateActionButtons();
-
-        } catch (SQLException e) {
+        }, e -> {
             showAlert("Error", "Failed to reserve book: " + e.getMessage(), Alert.AlertType.ERROR);
             e.printStackTrace();
-        }
+        });
     }
 
     @FXML
@@ -226,6 +191,7 @@ public class BookDetailsPopUpController {
 
     @FXML
     private void closePopup() {
+        background.cancelAll();
         Stage stage = (Stage) closeButton.getScene().getWindow();
         stage.close();
     }
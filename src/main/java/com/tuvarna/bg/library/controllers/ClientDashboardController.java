@@ -1,7 +1,16 @@
     package com.tuvarna.bg.library.controllers;
 
     import com.tuvarna.bg.library.entity.*;
+    import com.tuvarna.bg.library.service.AuthorLineCache;
+    import com.tuvarna.bg.library.service.BookSearchService;
+    import com.tuvarna.bg.library.service.CoverImageService;
+    import com.tuvarna.bg.library.service.ReferenceDataCache;
+    import com.tuvarna.bg.library.ui.VirtualGridView;
+    import com.tuvarna.bg.library.util.BackgroundTasks;
+    import com.tuvarna.bg.library.util.ChangeNotifications;
+    import com.tuvarna.bg.library.util.Debouncer;
     import com.tuvarna.bg.library.util.DatabaseUtil;
+    import javafx.application.Platform;
     import javafx.beans.property.SimpleStringProperty;
     import javafx.collections.FXCollections;
     import javafx.collections.ObservableList;
@@ -11,14 +20,12 @@
     import javafx.scene.Scene;
     import javafx.scene.control.*;
     import javafx.scene.control.cell.PropertyValueFactory;
-    import javafx.scene.image.Image;
     import javafx.scene.image.ImageView;
-    import javafx.scene.layout.GridPane;
     import javafx.scene.layout.VBox;
     import javafx.stage.Stage;
     import javafx.stage.StageStyle;
+    import javafx.util.Duration;
 
-    import java.io.File;
     import java.io.IOException;
     import java.net.URL;
     import java.sql.*;
@@ -33,7 +40,7 @@
         @FXML private TextField searchField;
         @FXML private ComboBox<GenreEntity> genreFilterCombo;
         @FXML private ComboBox<String> languageFilterCombo;
-        @FXML private GridPane booksGrid;
+        @FXML private VirtualGridView<BookEntity> booksGrid;
 
         @FXML private TableView<LoanEntity> activeLoansTable;
         @FXML private TableColumn<LoanEntity, String> loanBookColumn;
@@ -54,7 +61,14 @@
         private UserEntity currentUser;
         private BookEntity selectedBook;
 
-        private final List<BookEntity> gridBooks = new ArrayList<>();
+        private final BackgroundTasks background = new BackgroundTasks();
+        private final CoverImageService covers = CoverImageService.getInstance();
+        private final ReferenceDataCache referenceData = ReferenceDataCache.getInstance();
+        private final AuthorLineCache authorLines = AuthorLineCache.getInstance();
+        private Runnable unsubscribeChanges;
+        private static final int AUTHOR_WARM_UP = 200;
+        private final BookSearchService bookSearch = new BookSearchService();
+        private final Debouncer searchDebouncer = new Debouncer(Duration.millis(BookSearchService.TYPE_AHEAD_DEBOUNCE_MS));
         private static final DateTimeFormatter DATE_FMT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
         private static final DateTimeFormatter DATETIME_FMT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
 
@@ -73,8 +87,52 @@
         public void initialize() {
             setupTables();       // fit columns + status
             setupComboBoxes();   // dynamic filters
-            // Responsive grid: recalc when width changes
-            booksGrid.widthProperty().addListener((obs, ov, nv) -> layoutBooksGrid());
+            // Virtualized grid: only visible rows get card nodes; reflows itself on resize
+            booksGrid.setCardFactory(BookCard::new);
+            booksGrid.setCardSize(180, 260, 20, 20);
+            booksGrid.setColumnRange(3, 8); // minimum 3 per row, cap for readability
+
+            // Search-as-you-type: each keystroke restarts the debounce window
+            if (BookSearchService.TYPE_AHEAD_DEBOUNCE_MS > 0) {
+                searchField.textProperty().addListener((obs, ov, nv) -> searchDebouncer.trigger(this::searchBooks));
+            }
+
+            subscribeToChanges();
+        }
+
+        // Other terminals' writes: reload this user's loans/reservations when one of theirs changed, and
+        // redraw the cards when author lines may have changed (AuthorLineCache has dropped those already)
+        private void subscribeToChanges() {
+            unsubscribeChanges = ChangeNotifications.subscribe(new ChangeNotifications.Listener() {
+                @Override public void onChanges(List<ChangeNotifications.ChangeEvent> events) {
+                    BackgroundTasks.onFxThread(() -> applyChanges(events));
+                }
+
+                @Override public void onResync() {
+                    BackgroundTasks.onFxThread(() -> {
+                        booksGrid.refresh();
+                        refreshLoans();
+                        refreshReservations();
+                    });
+                }
+            });
+        }
+
+        private void applyChanges(List<ChangeNotifications.ChangeEvent> events) {
+            if (currentUser == null) return;
+            Integer me = currentUser.getUsersId();
+            boolean loans = false, reservations = false, authors = false;
+            for (ChangeNotifications.ChangeEvent e : events) {
+                switch (e.table) {
+                    case LOANS -> loans |= me.equals(e.userId);
+                    case RESERVATIONS -> reservations |= me.equals(e.userId);
+                    case BOOK_AUTHORS -> authors = true;
+                    default -> { }
+                }
+            }
+            if (loans) refreshLoans();
+            if (reservations) refreshReservations();
+            if (authors) booksGrid.refresh();
         }
 
         /* ---------- TABLES: fill width, remove actions, format/status ---------- */
@@ -158,48 +216,22 @@
         }
 
         private void loadGenres() {
-            try (Connection conn = DatabaseUtil.getConnection();
-                 Statement stmt = conn.createStatement();
-                 ResultSet rs = stmt.executeQuery("SELECT genres_id, gen_name FROM genres ORDER BY gen_name")) {
-
-                ObservableList<GenreEntity> genres = FXCollections.observableArrayList();
-                while (rs.next()) {
-                    GenreEntity g = new GenreEntity();
-                    g.setGenresId(rs.getInt("genres_id"));
-                    g.setGenreName(rs.getString("gen_name"));
-                    genres.add(g);
-                }
-                genreFilterCombo.setItems(genres);
-            } catch (SQLException e) { e.printStackTrace(); }
+            background.submit("genres", referenceData::genres,
+                    genres -> genreFilterCombo.setItems(FXCollections.observableArrayList(genres)),
+                    Throwable::printStackTrace);
         }
 
         private void loadLanguages() {
+            background.submit("languages", referenceData::languages, this::applyLanguages, Throwable::printStackTrace);
+        }
+
+        private void applyLanguages(List<String> loaded) {
             // Keep current selection if possible
             String current = languageFilterCombo.getValue();
 
             ObservableList<String> langs = FXCollections.observableArrayList();
             langs.add("All languages");
-
-            String sql =
-                    "SELECT MIN(TRIM(language)) AS lang " +
-                            "FROM books " +
-                            "WHERE language IS NOT NULL AND TRIM(language) <> '' " +
-                            "GROUP BY LOWER(TRIM(language)) " +          // case-insensitive distinct
-                            "ORDER BY MIN(TRIM(language)) ASC";
-
-            try (Connection conn = DatabaseUtil.getConnection();
-                 Statement stmt = conn.createStatement();
-                 ResultSet rs = stmt.executeQuery(sql)) {
-
-                while (rs.next()) {
-                    String lang = rs.getString("lang");
-                    if (lang != null && !lang.isBlank()) {
-                        langs.add(lang.trim());
-                    }
-                }
-            } catch (SQLException e) {
-                e.printStackTrace();
-            }
+            langs.addAll(loaded);
 
             languageFilterCombo.setItems(langs);
 
@@ -223,124 +255,84 @@
         /* ---------- SEARCH + RESPONSIVE GRID ---------- */
         @FXML
         private void searchBooks() {
+            searchDebouncer.cancel(); // an explicit search supersedes a pending type-ahead one
             String searchTerm = searchField.getText() == null ? "" : searchField.getText().trim();
             GenreEntity selectedGenre = genreFilterCombo.getValue();
             String selectedLanguage = languageFilterCombo.getValue();
 
-            try {
-                StringBuilder sql = new StringBuilder();
-                sql.append("SELECT DISTINCT ")
-                        .append("b.books_id, b.title, b.summary, b.isbn, b.language, b.publication_year, ")
-                        .append("b.publishers_id, b.image_path ")
-                        .append("FROM books b ")
-                        .append("LEFT JOIN book_authors ba ON b.books_id = ba.books_id ")
-                        .append("LEFT JOIN authors a ON ba.authors_id = a.authors_id ")
-                        .append("LEFT JOIN book_genres bg ON b.books_id = bg.books_id ")
-                        .append("LEFT JOIN genres g ON bg.genres_id = g.genres_id ")
-                        .append("WHERE 1=1 ");
-
-                List<Object> params = new ArrayList<>();
-
-                if (!searchTerm.isEmpty()) {
-                    sql.append("AND (b.title ILIKE ? OR b.isbn ILIKE ? OR a.full_name ILIKE ?) ");
-                    String like = "%" + searchTerm + "%";
-                    params.add(like); params.add(like); params.add(like);
-                }
+            Integer genreId = selectedGenre != null ? selectedGenre.getGenresId() : null;
+            String language = (selectedLanguage != null && !"All languages".equals(selectedLanguage)) ? selectedLanguage : null;
 
-                if (selectedGenre != null) {
-                    sql.append("AND g.genres_id = ? ");
-                    params.add(selectedGenre.getGenresId());
+            // a newer search cancels this one's statement on the server
+            background.submitCancellable("search", cancel -> {
+                List<BookSearchService.BookHit> hits = bookSearch.search(searchTerm, genreId, language, cancel);
+                if (hits.isEmpty() && !searchTerm.isEmpty() && !cancel.isCancelled()) {
+                    // nothing matched as typed: retry typo-tolerant ("hary poter")
+                    hits = bookSearch.fuzzySearch(searchTerm, genreId, language, cancel);
                 }
-
-                if (selectedLanguage != null && !"All languages".equals(selectedLanguage)) {
-                    sql.append("AND LOWER(b.language) = LOWER(?) "); // case-insensitive match
-                    params.add(selectedLanguage);
-                }
-
-                sql.append("ORDER BY b.title");
-
-                try (Connection conn = DatabaseUtil.getConnection();
-                     PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
-
-                    for (int i = 0; i < params.size(); i++) stmt.setObject(i + 1, params.get(i));
-
-                    try (ResultSet rs = stmt.executeQuery()) {
-                        // Build list then layout (for responsive re-render)
-                        gridBooks.clear();
-                        while (rs.next()) {
-                            BookEntity b = new BookEntity();
-                            b.setBooksId(rs.getInt("books_id"));
-                            b.setTitle(rs.getString("title"));
-                            b.setSummary(safeGetString(rs, "summary"));
-                            b.setIsbn(rs.getString("isbn"));
-                            b.setLanguage(safeGetString(rs, "language"));
-                            b.setPublicationYear(rs.getInt("publication_year"));
-                            if (hasColumn(rs, "image_path")) b.setImagePath(rs.getString("image_path"));
-                            gridBooks.add(b);
-                        }
-                        layoutBooksGrid();
-                    }
+                List<BookEntity> books = new ArrayList<>();
+                for (BookSearchService.BookHit hit : hits) books.add(hit.book);
+                // warm the first screens' author lines in one query; cards further down (browsing lists the
+                // whole catalogue) batch-load theirs as they scroll into view
+                if (!cancel.isCancelled()) {
+                    authorLines.getAll(books.stream().limit(AUTHOR_WARM_UP).map(BookEntity::getBooksId).toList());
                 }
-
-            } catch (SQLException e) {
+                return books;
+            }, books -> booksGrid.setSource(books), e -> {
                 showAlert("Error", "Failed to search books: " + e.getMessage(), Alert.AlertType.ERROR);
                 e.printStackTrace();
-            }
+            });
         }
 
-        private void layoutBooksGrid() {
-            if (booksGrid == null) return;
-            booksGrid.getChildren().clear();
-
-            // Card metrics
-            double cardW = 180;     // preferred card width
-            double gaps  = 16;      // assumed HGap
-            double pad   = 32;      // approximate padding inside container
-
-            double available = Math.max(booksGrid.getWidth() - pad, 600); // fallback if width not yet measured
-            int maxCols = (int) Math.floor(available / (cardW + gaps));
-            if (maxCols < 3) maxCols = 3;     // minimum 3 per row
-            if (maxCols > 8) maxCols = 8;     // cap for readability
-
-            int row = 0, col = 0;
-            for (BookEntity b : gridBooks) {
-                VBox card = createBookCard(b);
-                booksGrid.add(card, col, row);
-                col++;
-                if (col >= maxCols) { col = 0; row++; }
+        /** Grid card; instances are recycled by the grid as rows scroll in and out of view. */
+        private final class BookCard implements VirtualGridView.Card<BookEntity> {
+            private final VBox card = new VBox(10);
+            private final ImageView coverImage = new ImageView();
+            private final Label titleLabel = new Label();
+            private final Label authorLbl = new Label();
+            private BookEntity book;
+
+            BookCard() {
+                card.getStyleClass().add("book-card");
+                card.setPrefWidth(180);
+                card.setPrefHeight(260);
+
+                coverImage.getStyleClass().add("book-image");
+                coverImage.setFitWidth(140);
+                coverImage.setFitHeight(190);
+                coverImage.setPreserveRatio(true);
+
+                titleLabel.getStyleClass().add("book-title");
+                titleLabel.setWrapText(true);
+                titleLabel.setMaxWidth(160);
+
+                authorLbl.getStyleClass().add("book-author");
+
+                card.getChildren().addAll(coverImage, titleLabel, authorLbl);
+                card.setOnMouseClicked(event -> {
+                    if (book == null) return;
+                    if (event.getClickCount() == 2) showBookDetailsPopup(book);
+                    else if (event.getClickCount() == 1) showBookDetails(book);
+                });
             }
-        }
 
-        private VBox createBookCard(BookEntity book) {
-            VBox card = new VBox(10);
-            card.getStyleClass().add("book-card");
-            card.setPrefWidth(180);
-            card.setPrefHeight(260);
-
-            ImageView coverImage = new ImageView();
-            coverImage.getStyleClass().add("book-image");
-            coverImage.setFitWidth(140);
-            coverImage.setFitHeight(190);
-            coverImage.setPreserveRatio(true);
-
-            // ✅ load robustly
-            Image cover = findCover(book, 140);
-            if (cover != null) coverImage.setImage(cover);
-
-            Label titleLabel = new Label(book.getTitle());
-            titleLabel.getStyleClass().add("book-title");
-            titleLabel.setWrapText(true);
-            titleLabel.setMaxWidth(160);
-
-            Label authorLbl = new Label(authorsLine(book.getBooksId()));
-            authorLbl.getStyleClass().add("book-author");
-
-            card.getChildren().addAll(coverImage, titleLabel, authorLbl);
-            card.setOnMouseClicked(event -> {
-                if (event.getClickCount() == 2) showBookDetailsPopup(book);
-                else if (event.getClickCount() == 1) showBookDetails(book);
-            });
-            return card;
+            @Override public VBox getNode() { return card; }
+
+            @Override
+            public void update(BookEntity b) {
+                this.book = b;
+                if (b == null) {
+                    covers.loadInto(coverImage, null, 140);
+                    titleLabel.setText(null);
+                    authorLbl.setText(null);
+                    return;
+                }
+                covers.loadInto(coverImage, b, 140);
+                titleLabel.setText(b.getTitle());
+                String authors = authorLines.getIfPresent(b.getBooksId());
+                authorLbl.setText(authors);
+                if (authors == null) requestAuthorLine(b.getBooksId());
+            }
         }
 
         /* ---------- DETAILS & ACTIONS ---------- */
@@ -348,19 +340,21 @@
             this.selectedBook = book;
 
             bookTitleLabel.setText(book.getTitle());
-            authorLabel.setText(authorsLine(book.getBooksId()));             publisherLabel.setText("Publisher Name");
+            String authors = authorLines.getIfPresent(book.getBooksId());
+            authorLabel.setText(authors);
+            if (authors == null) {
+                background.submit("detailsAuthors", () -> authorLines.get(book.getBooksId()), line -> {
+                    if (selectedBook == book) authorLabel.setText(line);
+                }, Throwable::printStackTrace);
+            }
+            publisherLabel.setText("Publisher Name");
             isbnLabel.setText(book.getIsbn());
             languageLabel.setText(book.getLanguage());
             yearLabel.setText(book.getPublicationYear() != null ? book.getPublicationYear().toString() : "N/A");
             genresLabel.setText("Genre List");
             summaryArea.setText(book.getSummary());
 
-            if (book.getImagePath() != null && !book.getImagePath().isEmpty()) {
-                try {
-                    File imageFile = new File(book.getImagePath());
-                    bookCoverImage.setImage(imageFile.exists() ? new Image(imageFile.toURI().toString()) : null);
-                } catch (Exception ignored) { bookCoverImage.setImage(null); }
-            } else bookCoverImage.setImage(null);
+            covers.loadInto(bookCoverImage, book, 240);
 
             updateBookActionButtons(book);
         }
@@ -399,14 +393,17 @@
         }
 
         private void updateBookActionButtons(BookEntity book) {
-            boolean hasAvailableCopies = checkBookAvailability(book.getBooksId());
-            boolean hasReservation = checkUserReservation(book.getBooksId());
+            int bookId = book.getBooksId();
+            background.submit("bookActions", () -> new boolean[]{checkBookAvailability(bookId), checkUserReservation(bookId)}, flags -> {
+                boolean hasAvailableCopies = flags[0];
+                boolean hasReservation = flags[1];
 
-            reserveButton.setDisable(hasReservation);
-            borrowButton.setDisable(!hasAvailableCopies);
+                reserveButton.setDisable(hasReservation);
+                borrowButton.setDisable(!hasAvailableCopies);
 
-            reserveButton.setText(hasReservation ? "Already Reserved" : "Reserve Book");
-            borrowButton.setText(hasAvailableCopies ? "Borrow Available Copy" : "No Copies Available");
+                reserveButton.setText(hasReservation ? "Already Reserved" : "Reserve Book");
+                borrowButton.setText(hasAvailableCopies ? "Borrow Available Copy" : "No Copies Available");
+            });
         }
 
         private boolean checkBookAvailability(int bookId) {
@@ -439,38 +436,27 @@
 
         /* ---------- REFRESH HELPERS ---------- */
         private void refreshBooks() {
-            loadLanguages();   // <-- ensure combo reflects DB now
+            loadLanguages();   // cached; book writes invalidate it
             searchBooks();
         }
-        // at top of ClientDashboardController
-        private final Map<Integer, String> authorsCache = new HashMap<>();
-
-        private String authorsLine(int bookId) {
-            if (authorsCache.containsKey(bookId)) return authorsCache.get(bookId);
-            String sql = """
-        SELECT COALESCE(
-                 STRING_AGG(DISTINCT a.full_name, ', ' ORDER BY a.full_name),
-                 'Unknown Author'
-               ) AS authors
-        FROM book_authors ba
-        LEFT JOIN authors a ON a.authors_id = ba.authors_id
-        WHERE ba.books_id = ?
-    """;
-            try (Connection c = DatabaseUtil.getConnection();
-                 PreparedStatement ps = c.prepareStatement(sql)) {
-                ps.setInt(1, bookId);
-                try (ResultSet rs = ps.executeQuery()) {
-                    String s = (rs.next() ? rs.getString("authors") : "Unknown Author");
-                    if (s == null || s.isBlank()) s = "Unknown Author";
-                    authorsCache.put(bookId, s);
-                    return s;
-                }
-            } catch (SQLException e) {
-                e.printStackTrace();
-                return "Unknown Author";
+        // Cards whose author line wasn't cached, loaded together once the current pulse has laid them out
+        private final Set<Integer> pendingAuthorIds = new HashSet<>();
+
+        private void requestAuthorLine(int bookId) {
+            if (pendingAuthorIds.add(bookId) && pendingAuthorIds.size() == 1) {
+                Platform.runLater(this::loadPendingAuthorLines);
             }
         }
 
+        private void loadPendingAuthorLines() {
+            List<Integer> ids = new ArrayList<>(pendingAuthorIds);
+            pendingAuthorIds.clear();
+            if (ids.isEmpty()) return;
+            // every visible card re-reads the cache; any still missing just request again
+            background.submit("authorLines", () -> authorLines.getAll(ids), lines -> booksGrid.refresh(),
+                    Throwable::printStackTrace);
+        }
+
         private void refreshLoans() {
             if (currentUser == null) return;
             loadActiveLoans();
@@ -483,14 +469,26 @@
 
         private void loadActiveLoans() {
             if (currentUser == null) return;
+            int userId = currentUser.getUsersId();
+            background.submit("loans", () -> queryLoans(userId),
+                    loans -> activeLoansTable.setItems(FXCollections.observableArrayList(loans)),
+                    Throwable::printStackTrace);
+        }
+
+        // One joined query; each row carries its copy and book, so no nested lookups hold extra connections
+        private List<LoanEntity> queryLoans(int userId) throws SQLException {
             try (Connection conn = DatabaseUtil.getConnection();
                  PreparedStatement stmt = conn.prepareStatement(
-                         "SELECT loans_id, users_id, copy_id, borrowed_at, due_date, returned_at " +
-                                 "FROM loans WHERE users_id = ? ORDER BY borrowed_at DESC")) {
-
-                stmt.setInt(1, currentUser.getUsersId());
+                         "SELECT l.loans_id, l.borrowed_at, l.due_date, l.returned_at, " +
+                                 "       c.copies_id, c.status, " + BOOK_COLUMNS +
+                                 "FROM loans l " +
+                                 "LEFT JOIN book_copies c ON c.copies_id = l.copy_id " +
+                                 "LEFT JOIN books b ON b.books_id = c.books_id " +
+                                 "WHERE l.users_id = ? ORDER BY l.borrowed_at DESC")) {
+
+                stmt.setInt(1, userId);
                 try (ResultSet rs = stmt.executeQuery()) {
-                    ObservableList<LoanEntity> loans = FXCollections.observableArrayList();
+                    List<LoanEntity> loans = new ArrayList<>();
                     while (rs.next()) {
                         LoanEntity loan = new LoanEntity();
                         loan.setLoansId(rs.getInt("loans_id"));
@@ -501,87 +499,77 @@
                         loan.setDueDate(dDate != null ? dDate.toLocalDate() : null);
                         loan.setReturnedAt(rAt != null ? rAt.toLocalDateTime() : null);
 
-                        BookCopyEntity copy = loadBookCopy(rs.getInt("copy_id"));
-                        loan.setCopy(copy);
+                        if (rs.getObject("copies_id") != null) {
+                            BookCopyEntity copy = new BookCopyEntity();
+                            copy.setCopiesId(rs.getInt("copies_id"));
+                            copy.setStatus(rs.getString("status"));
+                            copy.setBook(mapBook(rs));
+                            loan.setCopy(copy);
+                        }
                         loans.add(loan);
                     }
-                    activeLoansTable.setItems(loans);
+                    return loans;
                 }
-            } catch (SQLException e) { e.printStackTrace(); }
+            }
         }
 
         private void loadUserReservations() {
             if (currentUser == null) return;
+            int userId = currentUser.getUsersId();
+            background.submit("reservations", () -> queryReservations(userId),
+                    reservations -> reservationsTable.setItems(FXCollections.observableArrayList(reservations)),
+                    Throwable::printStackTrace);
+        }
+
+        private List<ReservationEntity> queryReservations(int userId) throws SQLException {
             try (Connection conn = DatabaseUtil.getConnection();
                  PreparedStatement stmt = conn.prepareStatement(
-                         "SELECT reservations_id, user_id, book_id, created_at, status " +
-                                 "FROM reservations WHERE user_id = ? ORDER BY created_at DESC")) {
+                         "SELECT r.reservations_id, r.created_at, r.status, " + BOOK_COLUMNS +
+                                 "FROM reservations r " +
+                                 "LEFT JOIN books b ON b.books_id = r.book_id " +
+                                 "WHERE r.user_id = ? ORDER BY r.created_at DESC")) {
 
-                stmt.setInt(1, currentUser.getUsersId());
+                stmt.setInt(1, userId);
                 try (ResultSet rs = stmt.executeQuery()) {
-                    ObservableList<ReservationEntity> reservations = FXCollections.observableArrayList();
+                    List<ReservationEntity> reservations = new ArrayList<>();
                     while (rs.next()) {
                         ReservationEntity r = new ReservationEntity();
                         r.setReservationsId(rs.getInt("reservations_id"));
                         Timestamp cAt = rs.getTimestamp("created_at");
                         r.setCreatedAt(cAt != null ? cAt.toLocalDateTime() : null);
                         r.setStatus(rs.getString("status"));
-
-                        BookEntity book = loadBook(rs.getInt("book_id"));
-                        r.setBook(book);
+                        r.setBook(mapBook(rs));
                         reservations.add(r);
                     }
-                    reservationsTable.setItems(reservations);
-                }
-            } catch (SQLException e) { e.printStackTrace(); }
-        }
-
-        /* ---------- DB helpers ---------- */
-        private BookEntity loadBook(int bookId) throws SQLException {
-            String sql = "SELECT books_id, title, summary, isbn, language, publication_year, image_path " +
-                    "FROM books WHERE books_id = ?";
-            try (Connection conn = DatabaseUtil.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
-                stmt.setInt(1, bookId);
-                try (ResultSet rs = stmt.executeQuery()) {
-                    if (rs.next()) {
-                        BookEntity book = new BookEntity();
-                        book.setBooksId(rs.getInt("books_id"));
-                        book.setTitle(rs.getString("title"));
-                        book.setSummary(safeGetString(rs, "summary"));
-                        book.setIsbn(rs.getString("isbn"));
-                        book.setLanguage(safeGetString(rs, "language"));
-                        book.setPublicationYear(rs.getInt("publication_year"));
-                        if (hasColumn(rs, "image_path")) book.setImagePath(rs.getString("image_path"));
-                        return book;
-                    }
+                    return reservations;
                 }
             }
-            return null;
         }
 
-        private BookCopyEntity loadBookCopy(int copyId) throws SQLException {
-            String sql = "SELECT copies_id, books_id, status FROM book_copies WHERE copies_id = ?";
-            try (Connection conn = DatabaseUtil.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
-                stmt.setInt(1, copyId);
-                try (ResultSet rs = stmt.executeQuery()) {
-                    if (rs.next()) {
-                        BookCopyEntity copy = new BookCopyEntity();
-                        copy.setCopiesId(rs.getInt("copies_id"));
-                        copy.setStatus(rs.getString("status"));
-                        BookEntity book = loadBook(rs.getInt("books_id"));
-                        copy.setBook(book);
-                        return copy;
-                    }
-                }
-            }
-            return null;
+        /* ---------- DB helpers ---------- */
+        private static final String BOOK_COLUMNS =
+                "b.books_id, b.title, b.summary, b.isbn, b.language, b.publication_year, b.image_path ";
+
+        // The BOOK_COLUMNS of the current row, or null when the join found no book
+        private static BookEntity mapBook(ResultSet rs) throws SQLException {
+            if (rs.getObject("books_id") == null) return null;
+            BookEntity book = new BookEntity();
+            book.setBooksId(rs.getInt("books_id"));
+            book.setTitle(rs.getString("title"));
+            book.setSummary(rs.getString("summary"));
+            book.setIsbn(rs.getString("isbn"));
+            book.setLanguage(rs.getString("language"));
+            book.setPublicationYear(rs.getInt("publication_year"));
+            book.setImagePath(rs.getString("image_path"));
+            return book;
         }
 
         /* ---------- Logout & utils ---------- */
         @FXML
         private void handleLogout() {
+            searchDebouncer.cancel();
+            if (unsubscribeChanges != null) unsubscribeChanges.run();
+            background.cancelAll();
             javafx.application.Platform.runLater(() -> {
                 Stage oldStage = (Stage) userLabel.getScene().getWindow();
                 oldStage.hide();
@@ -628,59 +616,7 @@
             alert.showAndWait();
         }
 
-        // ---------- small helpers ----------
-        private static boolean hasColumn(ResultSet rs, String col) throws SQLException {
-            ResultSetMetaData md = rs.getMetaData();
-            for (int i = 1; i <= md.getColumnCount(); i++) {
-                if (col.equalsIgnoreCase(md.getColumnName(i))) return true;
-            }
-            return false;
-        }
-        private static String safeGetString(ResultSet rs, String col) throws SQLException {
-            return hasColumn(rs, col) ? rs.getString(col) : null;
-        }
 
-        // --- Robust cover loader (cards + left panel) ---
-        private Image findCover(BookEntity b, double targetWidth) {
-            try {
-                String p = b.getImagePath();
-                java.util.List<String> candidates = new java.util.ArrayList<>();
-
-                if (p != null && !p.isBlank()) {
-                    // already a URL?
-                    if (p.startsWith("http://") || p.startsWith("https://") || p.startsWith("file:")) {
-                        candidates.add(p);
-                    } else {
-                        // as absolute file
-                        candidates.add("file:" + java.nio.file.Paths.get(p).toAbsolutePath());
-                        // also try library_images/<filename>
-                        java.nio.file.Path fn = java.nio.file.Paths.get(p).getFileName();
-                        if (fn != null) {
-                            candidates.add("file:" + java.nio.file.Paths.get("library_images", fn.toString()).toAbsolutePath());
-                        }
-                    }
-                }
-
-                // optional: try classpath by ISBN (e.g. /covers/978...jpg)
-                if (b.getIsbn() != null) {
-                    java.net.URL byIsbn = getClass().getResource("/covers/" + b.getIsbn() + ".jpg");
-                    if (byIsbn != null) candidates.add(byIsbn.toExternalForm());
-                }
-
-                // try all candidates
-                for (String url : candidates) {
-                    try {
-                        Image img = new Image(url, targetWidth, 0, true, true);
-                        if (!img.isError()) return img;
-                    } catch (Exception ignore) {}
-                }
-
-                // final placeholder (put a small png in resources if you like)
-                java.net.URL ph = getClass().getResource("/com/tuvarna/bg/library/images/placeholder.png");
-                if (ph != null) return new Image(ph.toExternalForm(), targetWidth, 0, true, true);
-            } catch (Exception ignore) {}
-            return null;
-        }
 
 
     }
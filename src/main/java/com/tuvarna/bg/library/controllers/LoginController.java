@@ -2,6 +2,7 @@ package com.tuvarna.bg.library.controllers;
 
 import com.tuvarna.bg.library.dao.UserDAO;
 import com.tuvarna.bg.library.entity.UserEntity;
+import com.tuvarna.bg.library.util.BackgroundTasks;
 import com.tuvarna.bg.library.util.DatabaseUtil;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -13,6 +14,7 @@ import javafx.stage.StageStyle;
 
 import java.io.IOException;
 import java.sql.*;
+import java.util.Optional;
 import java.util.logging.Logger;
 
 public class LoginController {
@@ -25,6 +27,7 @@ public class LoginController {
 
 
     private UserDAO userDAO;
+    private final BackgroundTasks background = new BackgroundTasks();
 
     @FXML
     public void initialize() {
@@ -36,12 +39,16 @@ public class LoginController {
         // pressing Enter in password field triggers login
         passwordField.setOnAction(e -> handleLogin());
 
-        if (!DatabaseUtil.testConnection()) {
-            showError("Database connection failed. Please check your database settings.");
-            loginButton.setDisable(true);
-        }
-
-        insertDemoData(); // ensures demo users exist
+        background.submit("startup", () -> {
+            if (!DatabaseUtil.testConnection()) return false;
+            insertDemoData(); // ensures demo users exist
+            return true;
+        }, connected -> {
+            if (!connected) {
+                showError("Database connection failed. Please check your database settings.");
+                loginButton.setDisable(true);
+            }
+        });
     }
 
     @FXML
@@ -55,12 +62,20 @@ public class LoginController {
             return;
         }
 
-        if (!DatabaseUtil.testConnection()) {
+        loginButton.setDisable(true);
+        background.submit("login", () -> {
+            if (!DatabaseUtil.testConnection()) throw new SQLException("no connection");
+            return Optional.ofNullable(userDAO.findByUsernameAndPassword(username, password));
+        }, result -> {
+            loginButton.setDisable(false);
+            onAuthenticated(username, result.orElse(null));
+        }, e -> {
+            loginButton.setDisable(false);
             showError("Cannot connect to database. Please try again later.");
-            return;
-        }
+        });
+    }
 
-        UserEntity user = userDAO.findByUsernameAndPassword(username, password);
+    private void onAuthenticated(String username, UserEntity user) {
         if (user == null) {
             LOGGER.warning("No user found or wrong password for username=" + username);
             showError("Invalid username or password.");
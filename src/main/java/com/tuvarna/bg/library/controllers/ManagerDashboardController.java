@@ -1,7 +1,16 @@
 package com.tuvarna.bg.library.controllers;
 
+import com.tuvarna.bg.library.dao.LoanDAO;
+import com.tuvarna.bg.library.dao.ReservationDAO;
 import com.tuvarna.bg.library.entity.*;
+import com.tuvarna.bg.library.service.BookSearchService;
+import com.tuvarna.bg.library.service.LoanService;
+import com.tuvarna.bg.library.service.ReservationEngine;
+import com.tuvarna.bg.library.ui.KeysetPager;
+import com.tuvarna.bg.library.util.BackgroundTasks;
+import com.tuvarna.bg.library.util.ChangeNotifications;
 import com.tuvarna.bg.library.util.DatabaseUtil;
+import com.tuvarna.bg.library.util.Debouncer;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -13,6 +22,8 @@ import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.stage.StageStyle;
+import javafx.util.Duration;
+import javafx.util.StringConverter;
 
 import java.io.IOException;
 import java.net.URL;
@@ -21,15 +32,18 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 
 public class ManagerDashboardController implements DashboardController {
 
     @FXML private Label userLabel;
 
     @FXML private ComboBox<UserEntity> customerCombo;
-    @FXML private ComboBox<BookCopyEntity> copyCombo;
+    @FXML private ComboBox<LoanService.BookAvailability> bookCombo;
     @FXML private DatePicker dueDatePicker;
+    @FXML private TextArea returnsArea; // scanned copy ids
 
     @FXML private TableView<LoanEntity> loansTable;
     @FXML private TableColumn<LoanEntity, Integer> loanIdColumn;
@@ -50,6 +64,18 @@ public class ManagerDashboardController implements DashboardController {
     @FXML private PasswordField newPasswordField;
 
     private UserEntity currentUser;
+    private final LoanDAO loanDAO = new LoanDAO();
+    private final ReservationDAO reservationDAO = new ReservationDAO();
+    private final LoanService loanService = new LoanService();
+    private final ReservationEngine reservationEngine = new ReservationEngine();
+    private static final int DEFAULT_LOAN_DAYS = Integer.getInteger("library.loans.defaultDays", 14);
+    private final Debouncer bookPickerDebouncer =
+            new Debouncer(Duration.millis(BookSearchService.TYPE_AHEAD_DEBOUNCE_MS));
+    private static final int BOOK_PICKER_LIMIT = 30;
+    private final BackgroundTasks background = new BackgroundTasks();
+    private KeysetPager<LoanEntity> loansPager;
+    private KeysetPager<ReservationEntity> reservationsPager;
+    private Runnable unsubscribeChanges;
 
     private static final DateTimeFormatter DATE_FMT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
     private static final DateTimeFormatter DATETIME_FMT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
@@ -90,6 +116,8 @@ public class ManagerDashboardController implements DashboardController {
     public void initialize() {
         setupTableColumns();
         setupComboBoxes();
+        setupPaging();
+        subscribeToChanges();
         loadInitialData();
     }
 
@@ -182,6 +210,17 @@ public class ManagerDashboardController implements DashboardController {
             }
         });
 
+        // Double-click an open loan to check its copy back in
+        loansTable.setRowFactory(tv -> {
+            TableRow<LoanEntity> row = new TableRow<>();
+            row.setOnMouseClicked(event -> {
+                if (event.getClickCount() == 2 && !row.isEmpty() && row.getItem().isActive()) {
+                    confirmCheckin(row.getItem());
+                }
+            });
+            return row;
+        });
+
         /* ===== Reservations table: fill width ===== */
         reservationsTable.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY);
 
@@ -232,6 +271,7 @@ public class ManagerDashboardController implements DashboardController {
                         setStyle("-fx-text-fill: #27ae60;");
                         break;
                     case "COMPLETED":
+                    case "EXPIRED":
                         setStyle("-fx-text-fill: #7f8c8d;");
                         break;
                     case "CANCELLED":
@@ -243,13 +283,13 @@ public class ManagerDashboardController implements DashboardController {
             }
         });
 
-        // Double-click to toggle reservation status
+        // Double-click to hand out or cancel a reservation
         reservationsTable.setRowFactory(tv -> {
             TableRow<ReservationEntity> row = new TableRow<>();
             row.setOnMouseClicked(event -> {
                 if (event.getClickCount() == 2 && !row.isEmpty()) {
                     ReservationEntity reservation = row.getItem();
-                    toggleReservationStatus(reservation);
+                    handleReservation(reservation);
                 }
             });
             return row;
@@ -270,12 +310,47 @@ public class ManagerDashboardController implements DashboardController {
     /* ------------------------- Combo boxes ------------------------- */
     private void setupComboBoxes() {
         loadCustomers();
-        loadAvailableCopies();
+        setupBookPicker();
+    }
+
+    // Editable combo: typing searches the catalogue (debounced) and lists matches with their live
+    // available counts; the copy itself is allocated server-side at checkout.
+    private void setupBookPicker() {
+        bookCombo.setEditable(true);
+        bookCombo.setConverter(new StringConverter<>() {
+            @Override public String toString(LoanService.BookAvailability b) { return b == null ? "" : b.toString(); }
+            @Override public LoanService.BookAvailability fromString(String text) {
+                for (LoanService.BookAvailability b : bookCombo.getItems()) {
+                    if (b.toString().equals(text)) return b;
+                }
+                return null;
+            }
+        });
+        bookCombo.getEditor().textProperty().addListener((obs, ov, nv) -> {
+            LoanService.BookAvailability picked = bookCombo.getValue();
+            if (picked != null && picked.toString().equals(nv)) return; // text came from picking an item
+            bookPickerDebouncer.trigger(() -> searchCheckoutBooks(nv));
+        });
+        searchCheckoutBooks("");
+    }
+
+    private void searchCheckoutBooks(String text) {
+        background.submitCancellable("checkoutBooks",
+                token -> loanService.findBooksForCheckout(text, BOOK_PICKER_LIMIT, token),
+                books -> {
+                    bookCombo.getItems().setAll(books);
+                    if (bookCombo.getEditor().isFocused() && !books.isEmpty()) bookCombo.show();
+                },
+                Throwable::printStackTrace);
     }
 
     private void loadInitialData() {
         refreshLoans();
         refreshReservations();
+        // holds nobody picked up pass to the next in line before the list is read
+        background.submitWrite("expireHolds", reservationEngine::expireStale, expired -> {
+            if (expired > 0) refreshReservations();
+        }, null);
     }
 
     /* ------------------------- Create Loan ------------------------- */
@@ -283,32 +358,26 @@ public class ManagerDashboardController implements DashboardController {
     private void createLoan() {
         if (!validateLoanForm()) return;
 
-        try {
-            String sql = "INSERT INTO loans (users_id, staff_id, copy_id, due_date) VALUES (?, ?, ?, ?)";
-
-            try (Connection conn = DatabaseUtil.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-                stmt.setInt(1, customerCombo.getValue().getUsersId());
-                stmt.setInt(2, currentUser.getUsersId());
-                stmt.setInt(3, copyCombo.getValue().getCopiesId());
-                stmt.setDate(4, Date.valueOf(dueDatePicker.getValue()));
-
-                stmt.executeUpdate();
-
-                // Update copy status to LOANED
-                updateCopyStatus(copyCombo.getValue().getCopiesId(), "LOANED");
-
-                showAlert("Success", "Loan created successfully!", Alert.AlertType.INFORMATION);
-                clearLoanForm();
-                refreshLoans();
-                loadAvailableCopies(); // Refresh available copies
+        int customerId = customerCombo.getValue().getUsersId();
+        int staffId = currentUser.getUsersId();
+        int bookId = bookCombo.getValue().booksId;
+        LocalDate dueDate = dueDatePicker.getValue();
+
+        background.submitWrite("createLoan", () -> loanService.checkoutBook(customerId, staffId, bookId, dueDate), checkout -> {
+            showAlert("Success", "Loan created successfully! Hand out copy #" + checkout.copyId + ".",
+                    Alert.AlertType.INFORMATION);
+            clearLoanForm();
+            refreshLoans();
+        }, e -> {
+            if (e instanceof LoanService.CopyUnavailableException) {
+                // the last copies went to other desks: refresh the counts
+                showAlert("Copy Unavailable", e.getMessage(), Alert.AlertType.WARNING);
+                searchCheckoutBooks(bookCombo.getEditor().getText());
+                return;
             }
-
-        } catch (SQLException e) {
             showAlert("Error", "Failed to create loan: " + e.getMessage(), Alert.AlertType.ERROR);
             e.printStackTrace();
-        }
+        });
     }
 
     private boolean validateLoanForm() {
@@ -316,8 +385,12 @@ public class ManagerDashboardController implements DashboardController {
             showAlert("Validation Error", "Please select a customer", Alert.AlertType.WARNING);
             return false;
         }
-        if (copyCombo.getValue() == null) {
-            showAlert("Validation Error", "Please select a book copy", Alert.AlertType.WARNING);
+        if (bookCombo.getValue() == null) {
+            showAlert("Validation Error", "Please select a book", Alert.AlertType.WARNING);
+            return false;
+        }
+        if (bookCombo.getValue().available == 0) {
+            showAlert("Validation Error", "No copy of this book is available", Alert.AlertType.WARNING);
             return false;
         }
         if (dueDatePicker.getValue() == null || dueDatePicker.getValue().isBefore(LocalDate.now())) {
@@ -330,39 +403,113 @@ public class ManagerDashboardController implements DashboardController {
     @FXML
     private void clearLoanForm() {
         customerCombo.getSelectionModel().clearSelection();
-        copyCombo.getSelectionModel().clearSelection();
+        bookCombo.setValue(null); // clears the editor too, which re-runs the picker search with fresh counts
         dueDatePicker.setValue(null);
     }
 
+    /* --------------------------- Check-in --------------------------- */
+    private void confirmCheckin(LoanEntity loan) {
+        Alert confirmAlert = new Alert(Alert.AlertType.CONFIRMATION);
+        confirmAlert.setTitle("Confirm Return");
+        confirmAlert.setHeaderText("Check In");
+        confirmAlert.setContentText("Check in copy #" + loan.getCopy().getCopiesId() + " (" + loan.getCopy().getBook().getTitle() + ")?");
+        if (confirmAlert.showAndWait().orElse(ButtonType.CANCEL) != ButtonType.OK) return;
+
+        runCheckin(List.of(loan.getCopy().getCopiesId()));
+    }
+
+    // Returns cart: copy ids scanned into the text area, separated by newlines, spaces or commas
+    @FXML
+    private void checkInReturns() {
+        String text = returnsArea.getText() == null ? "" : returnsArea.getText().trim();
+        if (text.isEmpty()) {
+            showAlert("Validation Error", "Scan or type at least one copy ID", Alert.AlertType.WARNING);
+            return;
+        }
+
+        List<Integer> copyIds = new ArrayList<>();
+        List<String> invalid = new ArrayList<>();
+        for (String token : text.split("[\\s,;]+")) {
+            try {
+                copyIds.add(Integer.parseInt(token.replaceFirst("^#", "")));
+            } catch (NumberFormatException e) {
+                invalid.add(token);
+            }
+        }
+        if (!invalid.isEmpty()) {
+            markError(returnsArea);
+            showAlert("Validation Error", "Not a copy ID: " + String.join(", ", invalid), Alert.AlertType.WARNING);
+            return;
+        }
+        clearError(returnsArea);
+        runCheckin(copyIds);
+    }
+
+    private void runCheckin(List<Integer> copyIds) {
+        background.submitWrite("checkin", () -> loanService.checkin(copyIds), result -> {
+            StringBuilder msg = new StringBuilder()
+                    .append("Checked in ").append(result.returned.size()).append(" copy(ies).");
+            if (result.reservationsReady > 0) {
+                msg.append("\n").append(result.reservationsReady)
+                        .append(" copy(ies) are now held for reservations - put them on the hold shelf.");
+            }
+            if (!result.notOnLoan.isEmpty()) {
+                msg.append("\nNot on loan (skipped): ").append(result.notOnLoan);
+            }
+            showAlert("Check-in", msg.toString(),
+                    result.notOnLoan.isEmpty() ? Alert.AlertType.INFORMATION : Alert.AlertType.WARNING);
+            if (returnsArea != null) returnsArea.clear();
+            refreshLoans();
+            refreshReservations();
+            searchCheckoutBooks(bookCombo.getEditor().getText()); // available counts changed
+        }, e -> {
+            showAlert("Error", "Failed to check in: " + e.getMessage(), Alert.AlertType.ERROR);
+            e.printStackTrace();
+        });
+    }
+
     /* -------------------- Customer registration -------------------- */
     @FXML
     private void registerCustomer() {
         if (!validateCustomerForm()) return;
 
-        try {
+        String username = newUsernameField.getText().trim();
+        String password = newPasswordField.getText();
+        String firstName = newFirstNameField.getText().trim();
+        String lastName = newLastNameField.getText().trim();
+        String email = newEmailField.getText().trim();
+
+        background.submitWrite("registerCustomer", () -> {
+            if (usernameExists(username)) return false;
+
             String sql = "INSERT INTO users (username, password, first_name, last_name, email, roles_id) " +
                     "VALUES (?, ?, ?, ?, ?, (SELECT roles_id FROM roles WHERE name = 'CLIENT'))";
 
             try (Connection conn = DatabaseUtil.getConnection();
                  PreparedStatement stmt = conn.prepareStatement(sql)) {
 
-                stmt.setString(1, newUsernameField.getText().trim());
-                stmt.setString(2, newPasswordField.getText());
-                stmt.setString(3, newFirstNameField.getText().trim());
-                stmt.setString(4, newLastNameField.getText().trim());
-                stmt.setString(5, newEmailField.getText().trim());
+                stmt.setString(1, username);
+                stmt.setString(2, password);
+                stmt.setString(3, firstName);
+                stmt.setString(4, lastName);
+                stmt.setString(5, email);
 
                 stmt.executeUpdate();
-
-                showAlert("Success", "Customer registered successfully!", Alert.AlertType.INFORMATION);
-                clearCustomerForm();
-                loadCustomers(); // Refresh customer list
             }
-
-        } catch (SQLException e) {
+            return true;
+        }, inserted -> {
+            if (!inserted) {
+                markError(newUsernameField);
+                showAlert("Validation Error", "This username is already taken.", Alert.AlertType.WARNING);
+                return;
+            }
+            showAlert("Success", "Customer registered successfully!", Alert.AlertType.INFORMATION);
+            clearCustomerForm();
+            loadCustomers(); // Refresh customer list
+        }, e -> {
             showAlert("Error", "Failed to register customer: " + e.getMessage(), Alert.AlertType.ERROR);
             e.printStackTrace();
-        }
+        });
     }
 
     private boolean validateCustomerForm() {
@@ -385,11 +532,7 @@ public class ManagerDashboardController implements DashboardController {
             showAlert("Validation Error", "Username cannot be numbers only.", Alert.AlertType.WARNING);
             return false;
         }
-        if (usernameExists(username)) {
-            markError(newUsernameField);
-            showAlert("Validation Error", "This username is already taken.", Alert.AlertType.WARNING);
-            return false;
-        }
+        // uniqueness is checked against the DB together with the insert (off the FX thread)
 
         // Password (just non-empty per your spec)
         if (newPasswordField.getText() == null || newPasswordField.getText().isEmpty()) {
@@ -436,6 +579,12 @@ public class ManagerDashboardController implements DashboardController {
 
     /* --------------------------- Data load ------------------------- */
     private void loadCustomers() {
+        background.submit("customers", this::queryCustomers,
+                customers -> customerCombo.setItems(FXCollections.observableArrayList(customers)),
+                Throwable::printStackTrace);
+    }
+
+    private List<UserEntity> queryCustomers() throws SQLException {
         try (Connection conn = DatabaseUtil.getConnection();
              Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery(
@@ -443,7 +592,7 @@ public class ManagerDashboardController implements DashboardController {
                              "WHERE roles_id = (SELECT roles_id FROM roles WHERE name = 'CLIENT') " +
                              "ORDER BY first_name, last_name")) {
 
-            ObservableList<UserEntity> customers = FXCollections.observableArrayList();
+            List<UserEntity> customers = new ArrayList<>();
             while (rs.next()) {
                 UserEntity customer = new UserEntity();
                 customer.setUsersId(rs.getInt("users_id"));
@@ -453,167 +602,70 @@ public class ManagerDashboardController implements DashboardController {
                 customer.setEmail(rs.getString("email"));
                 customers.add(customer);
             }
-            customerCombo.setItems(customers);
-
-        } catch (SQLException e) { e.printStackTrace(); }
-    }
-
-    private void loadAvailableCopies() {
-        try (Connection conn = DatabaseUtil.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(
-                     "SELECT copies_id, books_id, status, acquired_at FROM book_copies " +
-                             "WHERE status = 'AVAILABLE' ORDER BY copies_id")) {
-
-            ObservableList<BookCopyEntity> copies = FXCollections.observableArrayList();
-            while (rs.next()) {
-                BookCopyEntity copy = new BookCopyEntity();
-                copy.setCopiesId(rs.getInt("copies_id"));
-                copy.setStatus(rs.getString("status"));
-                Date acq = rs.getDate("acquired_at");
-                copy.setAcquiredAt(acq != null ? acq.toLocalDate() : null);
-
-                // Load book information
-                BookEntity book = loadBook(rs.getInt("books_id"));
-                copy.setBook(book);
-
-                copies.add(copy);
-            }
-            copyCombo.setItems(copies);
-
-        } catch (SQLException e) { e.printStackTrace(); }
-    }
-
-    private BookEntity loadBook(int bookId) throws SQLException {
-        String sql = "SELECT books_id, title, isbn FROM books WHERE books_id = ?";
-        try (Connection conn = DatabaseUtil.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setInt(1, bookId);
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    BookEntity book = new BookEntity();
-                    book.setBooksId(rs.getInt("books_id"));
-                    book.setTitle(rs.getString("title"));
-                    book.setIsbn(rs.getString("isbn"));
-                    return book;
-                }
-            }
+            return customers;
         }
-        return null;
     }
 
-    private void refreshLoans() {
-        try (Connection conn = DatabaseUtil.getConnection();
-             Statement stmt = conn.createStatement();
-             // Shows active loans (not returned). If you also want returned, remove the WHERE clause.
-             ResultSet rs = stmt.executeQuery(
-                     "SELECT loans_id, users_id, staff_id, copy_id, borrowed_at, due_date, returned_at " +
-                             "FROM loans " +
-                             "ORDER BY borrowed_at DESC")) {
-
-            ObservableList<LoanEntity> loans = FXCollections.observableArrayList();
-            while (rs.next()) {
-                LoanEntity loan = new LoanEntity();
-                loan.setLoansId(rs.getInt("loans_id"));
-                Timestamp bt = rs.getTimestamp("borrowed_at");
-                loan.setBorrowedAt(bt != null ? bt.toLocalDateTime() : null);
-                Date dd = rs.getDate("due_date");
-                loan.setDueDate(dd != null ? dd.toLocalDate() : null);
-                Timestamp rt = rs.getTimestamp("returned_at");
-                loan.setReturnedAt(rt != null ? rt.toLocalDateTime() : null);
-
-                // Load user & copy
-                UserEntity user = loadUser(rs.getInt("users_id"));
-                loan.setUser(user);
-                BookCopyEntity copy = loadBookCopy(rs.getInt("copy_id"));
-                loan.setCopy(copy);
-
-                loans.add(loan);
-            }
-            loansTable.setItems(loans);
-
-        } catch (SQLException e) { e.printStackTrace(); }
+    // Both tables grow without bound over the years: load them a keyset page at a time while scrolling
+    private void setupPaging() {
+        // Single joined query per page; users/books repeated across loans share one instance
+        loansPager = new KeysetPager<>(loansTable, background, "loans", loanDAO::findPageWithDetails);
+        loansPager.setOnError(Throwable::printStackTrace);
+        // Users and books are batch-resolved with = ANY(?) per page instead of per row
+        reservationsPager = new KeysetPager<>(reservationsTable, background, "reservations",
+                reservationDAO::findPageWithDetails);
+        reservationsPager.setOnError(Throwable::printStackTrace);
+
+        // rows changed by any terminal are re-read by id and patched in (see subscribeToChanges)
+        loansPager.setRowLookup(LoanEntity::getLoansId, loanDAO::findByIdsWithDetails);
+        reservationsPager.setRowLookup(ReservationEntity::getReservationsId, reservationDAO::findByIdsWithDetails);
     }
 
-    private void refreshReservations() {
-        try (Connection conn = DatabaseUtil.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(
-                     "SELECT reservations_id, user_id, book_id, created_at, status " +
-                             "FROM reservations " +
-                             "ORDER BY created_at DESC")) {
-
-            ObservableList<ReservationEntity> reservations = FXCollections.observableArrayList();
-            while (rs.next()) {
-                ReservationEntity reservation = new ReservationEntity();
-                reservation.setReservationsId(rs.getInt("reservations_id"));
-                Timestamp ct = rs.getTimestamp("created_at");
-                reservation.setCreatedAt(ct != null ? ct.toLocalDateTime() : null);
-                reservation.setStatus(rs.getString("status"));
-
-                UserEntity user = loadUser(rs.getInt("user_id"));
-                reservation.setUser(user);
-
-                BookEntity book = loadBook(rs.getInt("book_id"));
-                reservation.setBook(book);
-
-                reservations.add(reservation);
+    // Loans and reservations written anywhere (other desks, the maintenance jobs, this one) show up
+    // without a reload; a batch of notifications costs at most one query per table.
+    private void subscribeToChanges() {
+        unsubscribeChanges = ChangeNotifications.subscribe(new ChangeNotifications.Listener() {
+            @Override public void onChanges(List<ChangeNotifications.ChangeEvent> events) {
+                BackgroundTasks.onFxThread(() -> applyChanges(events));
             }
-            reservationsTable.setItems(reservations);
 
-        } catch (SQLException e) { e.printStackTrace(); }
+            @Override public void onResync() {
+                BackgroundTasks.onFxThread(() -> {
+                    refreshLoans();
+                    refreshReservations();
+                });
+            }
+        });
     }
 
-    private UserEntity loadUser(int userId) throws SQLException {
-        String sql = "SELECT users_id, username, first_name, last_name, email FROM users WHERE users_id = ?";
-        try (Connection conn = DatabaseUtil.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setInt(1, userId);
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    UserEntity user = new UserEntity();
-                    user.setUsersId(rs.getInt("users_id"));
-                    user.setUsername(rs.getString("username"));
-                    user.setFirstName(rs.getString("first_name"));
-                    user.setLastName(rs.getString("last_name"));
-                    user.setEmail(rs.getString("email"));
-                    return user;
-                }
+    private void applyChanges(List<ChangeNotifications.ChangeEvent> events) {
+        Map<ChangeNotifications.Op, List<Integer>> loans = new EnumMap<>(ChangeNotifications.Op.class);
+        Map<ChangeNotifications.Op, List<Integer>> reservations = new EnumMap<>(ChangeNotifications.Op.class);
+        for (ChangeNotifications.ChangeEvent e : events) {
+            if (e.table == ChangeNotifications.Table.LOANS) {
+                loans.computeIfAbsent(e.op, op -> new ArrayList<>()).add(e.id);
+            } else if (e.table == ChangeNotifications.Table.RESERVATIONS) {
+                reservations.computeIfAbsent(e.op, op -> new ArrayList<>()).add(e.id);
             }
         }
-        return null;
+        if (!loans.isEmpty()) {
+            loansPager.rowsChanged(loans.getOrDefault(ChangeNotifications.Op.INSERT, List.of()),
+                    loans.getOrDefault(ChangeNotifications.Op.UPDATE, List.of()),
+                    loans.getOrDefault(ChangeNotifications.Op.DELETE, List.of()));
+        }
+        if (!reservations.isEmpty()) {
+            reservationsPager.rowsChanged(reservations.getOrDefault(ChangeNotifications.Op.INSERT, List.of()),
+                    reservations.getOrDefault(ChangeNotifications.Op.UPDATE, List.of()),
+                    reservations.getOrDefault(ChangeNotifications.Op.DELETE, List.of()));
+        }
     }
 
-    private BookCopyEntity loadBookCopy(int copyId) throws SQLException {
-        String sql = "SELECT copies_id, books_id, status, acquired_at FROM book_copies WHERE copies_id = ?";
-        try (Connection conn = DatabaseUtil.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setInt(1, copyId);
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    BookCopyEntity copy = new BookCopyEntity();
-                    copy.setCopiesId(rs.getInt("copies_id"));
-                    copy.setStatus(rs.getString("status"));
-                    Date acq = rs.getDate("acquired_at");
-                    copy.setAcquiredAt(acq != null ? acq.toLocalDate() : null);
-
-                    BookEntity book = loadBook(rs.getInt("books_id"));
-                    copy.setBook(book);
-                    return copy;
-                }
-            }
-        }
-        return null;
+    private void refreshLoans() {
+        loansPager.reload();
     }
 
-    private void updateCopyStatus(int copyId, String status) throws SQLException {
-        String sql = "UPDATE book_copies SET status = ? WHERE copies_id = ?";
-        try (Connection conn = DatabaseUtil.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setString(1, status);
-            stmt.setInt(2, copyId);
-            stmt.executeUpdate();
-        }
+    private void refreshReservations() {
+        reservationsPager.reload();
     }
 
     /* --------------------------- misc --------------------------- */
@@ -621,6 +673,9 @@ public class ManagerDashboardController implements DashboardController {
 
     @FXML
     private void handleLogout() {
+        bookPickerDebouncer.cancel();
+        if (unsubscribeChanges != null) unsubscribeChanges.run();
+        background.cancelAll();
         javafx.application.Platform.runLater(() -> {
             Stage oldStage = (Stage) userLabel.getScene().getWindow();
             oldStage.hide();
@@ -667,41 +722,57 @@ public class ManagerDashboardController implements DashboardController {
         alert.showAndWait();
     }
 
-    private void toggleReservationStatus(ReservationEntity reservation) {
-        String currentStatus = reservation.getStatus();
-        String newStatus;
-        switch (currentStatus) {
-            case "PENDING":   newStatus = "READY";      break;
-            case "READY":     newStatus = "COMPLETED";  break;
-            case "COMPLETED": newStatus = "CANCELLED";  break;
-            case "CANCELLED": newStatus = "PENDING";    break;
-            default:          newStatus = "PENDING";
+    // Pick-up or cancel; the engine moves the queue along (a cancelled hold passes its copy to the next in line)
+    private void handleReservation(ReservationEntity reservation) {
+        String status = reservation.getStatus();
+        if (!reservation.isActive()) {
+            showAlert("Reservation", "Reservation #" + reservation.getReservationsId() + " is " + status + ".",
+                    Alert.AlertType.INFORMATION);
+            return;
         }
 
-        try {
-            String sql = "UPDATE reservations SET status = ? WHERE reservations_id = ?";
-            try (Connection conn = DatabaseUtil.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
-                stmt.setString(1, newStatus);
-                stmt.setInt(2, reservation.getReservationsId());
-
-                int rows = stmt.executeUpdate();
-                if (rows > 0) {
-                    reservation.setStatus(newStatus);
-                    reservationsTable.refresh();
-                    showAlert("Success",
-                            "Reservation status changed from " + currentStatus + " to " + newStatus,
-                            Alert.AlertType.INFORMATION);
-                } else {
-                    showAlert("Error", "Failed to update reservation status", Alert.AlertType.ERROR);
-                }
-            }
-        } catch (SQLException e) {
-            showAlert("Error", "Database error: " + e.getMessage(), Alert.AlertType.ERROR);
-            e.printStackTrace();
+        ButtonType pickUp = new ButtonType("Hand Out");
+        ButtonType cancel = new ButtonType("Cancel Reservation");
+        ButtonType close = new ButtonType("Close", ButtonBar.ButtonData.CANCEL_CLOSE);
+
+        Alert dialog = new Alert(Alert.AlertType.CONFIRMATION);
+        dialog.setTitle("Reservation #" + reservation.getReservationsId());
+        dialog.setHeaderText(reservation.getBook().getTitle() + " for " + reservation.getUser().getFullName());
+        if ("READY".equals(status)) {
+            dialog.setContentText("A copy is on the hold shelf until "
+                    + (reservation.getExpiresAt() != null ? DATETIME_FMT.format(reservation.getExpiresAt()) : "further notice") + ".");
+            dialog.getButtonTypes().setAll(pickUp, cancel, close);
+        } else {
+            dialog.setContentText("Waiting for a copy to be returned.");
+            dialog.getButtonTypes().setAll(cancel, close);
+        }
+
+        ButtonType choice = dialog.showAndWait().orElse(close);
+        int reservationId = reservation.getReservationsId();
+        Integer staffId = currentUser != null ? currentUser.getUsersId() : null;
+        if (choice == pickUp) {
+            LocalDate dueDate = LocalDate.now().plusDays(DEFAULT_LOAN_DAYS);
+            background.submitWrite("reservationAction", () -> reservationEngine.fulfil(reservationId, staffId, dueDate), checkout -> {
+                showAlert("Success", "Loan created - hand out copy #" + checkout.copyId + ", due " + DATE_FMT.format(dueDate) + ".",
+                        Alert.AlertType.INFORMATION);
+                refreshReservations();
+                refreshLoans();
+            }, this::reservationActionFailed);
+        } else if (choice == cancel) {
+            background.submitWrite("reservationAction", () -> reservationEngine.cancel(reservationId), cancelled -> {
+                if (!cancelled) showAlert("Reservation", "The reservation was already closed.", Alert.AlertType.INFORMATION);
+                refreshReservations();
+                searchCheckoutBooks(bookCombo.getEditor().getText()); // a released copy may be back on the shelf
+            }, this::reservationActionFailed);
         }
     }
 
+    private void reservationActionFailed(Throwable e) {
+        showAlert("Error", "Reservation update failed: " + e.getMessage(), Alert.AlertType.ERROR);
+        refreshReservations();
+        if (!(e instanceof LoanService.CopyUnavailableException)) e.printStackTrace();
+    }
+
     @Override
     public void setCurrentUser(UserEntity user) {
         this.currentUser = user;
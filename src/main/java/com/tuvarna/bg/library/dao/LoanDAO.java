@@ -0,0 +1,123 @@
+package com.tuvarna.bg.library.dao;
+
+import com.tuvarna.bg.library.entity.BookCopyEntity;
+import com.tuvarna.bg.library.entity.BookEntity;
+import com.tuvarna.bg.library.entity.LoanEntity;
+import com.tuvarna.bg.library.entity.UserEntity;
+import com.tuvarna.bg.library.util.DatabaseUtil;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class LoanDAO {
+
+    // One projection for the whole loan graph: loans ⋈ users ⋈ book_copies ⋈ books
+    private static final String LOAN_GRAPH_SELECT =
+            "SELECT l.loans_id, l.borrowed_at, l.due_date, l.returned_at, " +
+                    "       u.users_id, u.username, u.first_name, u.last_name, u.email, " +
+                    "       bc.copies_id, bc.status AS copy_status, bc.acquired_at, " +
+                    "       b.books_id, b.title, b.isbn " +
+                    "FROM loans l " +
+                    "JOIN users u        ON u.users_id   = l.users_id " +
+                    "JOIN book_copies bc ON bc.copies_id = l.copy_id " +
+                    "JOIN books b        ON b.books_id   = bc.books_id ";
+
+    /**
+     * One keyset page of the loan graph, newest first. {@code after} is the last loan of the previous
+     * page (null for the first page); (borrowed_at, loans_id) keeps the order total when timestamps tie.
+     */
+    public List<LoanEntity> findPageWithDetails(LoanEntity after, int limit) throws SQLException {
+        String sql = LOAN_GRAPH_SELECT +
+                (after != null ? "WHERE (l.borrowed_at, l.loans_id) < (?, ?) " : "") +
+                "ORDER BY l.borrowed_at DESC, l.loans_id DESC " +
+                "LIMIT ?";
+
+        try (Connection conn = DatabaseUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            int i = 1;
+            if (after != null) {
+                ps.setTimestamp(i++, Timestamp.valueOf(after.getBorrowedAt()));
+                ps.setInt(i++, after.getLoansId());
+            }
+            ps.setInt(i, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                return mapLoanGraph(rs);
+            }
+        }
+    }
+
+    /** The given loans with details, in no particular order; ids that no longer exist are skipped. */
+    public List<LoanEntity> findByIdsWithDetails(Collection<Integer> ids) throws SQLException {
+        if (ids.isEmpty()) return new ArrayList<>();
+        String sql = LOAN_GRAPH_SELECT + "WHERE l.loans_id = ANY(?)";
+
+        try (Connection conn = DatabaseUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setArray(1, conn.createArrayOf("integer", ids.toArray()));
+            try (ResultSet rs = ps.executeQuery()) {
+                return mapLoanGraph(rs);
+            }
+        }
+    }
+
+    private List<LoanEntity> mapLoanGraph(ResultSet rs) throws SQLException {
+        Map<Integer, UserEntity> users = new HashMap<>();
+        Map<Integer, BookEntity> books = new HashMap<>();
+        Map<Integer, BookCopyEntity> copies = new HashMap<>();
+        List<LoanEntity> loans = new ArrayList<>();
+
+        while (rs.next()) {
+            LoanEntity loan = new LoanEntity();
+            loan.setLoansId(rs.getInt("loans_id"));
+            Timestamp bt = rs.getTimestamp("borrowed_at");
+            loan.setBorrowedAt(bt != null ? bt.toLocalDateTime() : null);
+            Date dd = rs.getDate("due_date");
+            loan.setDueDate(dd != null ? dd.toLocalDate() : null);
+            Timestamp rt = rs.getTimestamp("returned_at");
+            loan.setReturnedAt(rt != null ? rt.toLocalDateTime() : null);
+
+            int userId = rs.getInt("users_id");
+            UserEntity user = users.get(userId);
+            if (user == null) {
+                user = new UserEntity();
+                user.setUsersId(userId);
+                user.setUsername(rs.getString("username"));
+                user.setFirstName(rs.getString("first_name"));
+                user.setLastName(rs.getString("last_name"));
+                user.setEmail(rs.getString("email"));
+                users.put(userId, user);
+            }
+            loan.setUser(user);
+
+            int copyId = rs.getInt("copies_id");
+            BookCopyEntity copy = copies.get(copyId);
+            if (copy == null) {
+                copy = new BookCopyEntity();
+                copy.setCopiesId(copyId);
+                copy.setStatus(rs.getString("copy_status"));
+                Date acq = rs.getDate("acquired_at");
+                copy.setAcquiredAt(acq != null ? acq.toLocalDate() : null);
+
+                int bookId = rs.getInt("books_id");
+                BookEntity book = books.get(bookId);
+                if (book == null) {
+                    book = new BookEntity();
+                    book.setBooksId(bookId);
+                    book.setTitle(rs.getString("title"));
+                    book.setIsbn(rs.getString("isbn"));
+                    books.put(bookId, book);
+                }
+                copy.setBook(book);
+                copies.put(copyId, copy);
+            }
+            loan.setCopy(copy);
+
+            loans.add(loan);
+        }
+        return loans;
+    }
+}
@@ -0,0 +1,141 @@
+package com.tuvarna.bg.library.dao;
+
+import com.tuvarna.bg.library.entity.BookEntity;
+import com.tuvarna.bg.library.entity.ReservationEntity;
+import com.tuvarna.bg.library.entity.UserEntity;
+import com.tuvarna.bg.library.util.DatabaseUtil;
+
+import java.sql.*;
+import java.util.*;
+
+public class ReservationDAO {
+
+    /**
+     * One keyset page of reservations, newest first, with users and books attached.
+     * {@code after} is the last reservation of the previous page (null for the first page).
+     */
+    public List<ReservationEntity> findPageWithDetails(ReservationEntity after, int limit) throws SQLException {
+        String sql = "SELECT reservations_id, user_id, book_id, created_at, expires_at, status " +
+                "FROM reservations " +
+                (after != null ? "WHERE (created_at, reservations_id) < (?, ?) " : "") +
+                "ORDER BY created_at DESC, reservations_id DESC " +
+                "LIMIT ?";
+
+        try (Connection conn = DatabaseUtil.getConnection()) {
+            List<ReservationEntity> reservations = new ArrayList<>();
+            List<Integer> userIds = new ArrayList<>();
+            List<Integer> bookIds = new ArrayList<>();
+
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                int i = 1;
+                if (after != null) {
+                    ps.setTimestamp(i++, Timestamp.valueOf(after.getCreatedAt()));
+                    ps.setInt(i++, after.getReservationsId());
+                }
+                ps.setInt(i, limit);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        reservations.add(mapReservation(rs));
+                        userIds.add(rs.getInt("user_id"));
+                        bookIds.add(rs.getInt("book_id"));
+                    }
+                }
+            }
+
+            attachUsersAndBooks(conn, reservations, userIds, bookIds);
+            return reservations;
+        }
+    }
+
+    /** The given reservations with user and book, in no particular order; ids that no longer exist are skipped. */
+    public List<ReservationEntity> findByIdsWithDetails(Collection<Integer> ids) throws SQLException {
+        if (ids.isEmpty()) return new ArrayList<>();
+        String sql = "SELECT reservations_id, user_id, book_id, created_at, expires_at, status " +
+                "FROM reservations " +
+                "WHERE reservations_id = ANY(?)";
+
+        try (Connection conn = DatabaseUtil.getConnection()) {
+            List<ReservationEntity> reservations = new ArrayList<>();
+            List<Integer> userIds = new ArrayList<>();
+            List<Integer> bookIds = new ArrayList<>();
+
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setArray(1, conn.createArrayOf("integer", ids.toArray()));
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        reservations.add(mapReservation(rs));
+                        userIds.add(rs.getInt("user_id"));
+                        bookIds.add(rs.getInt("book_id"));
+                    }
+                }
+            }
+
+            attachUsersAndBooks(conn, reservations, userIds, bookIds);
+            return reservations;
+        }
+    }
+
+    /** Resolves the user/book ids collected for {@code reservations} (same order) in two batch queries. */
+    private void attachUsersAndBooks(Connection conn, List<ReservationEntity> reservations,
+                                     List<Integer> userIds, List<Integer> bookIds) throws SQLException {
+        if (reservations.isEmpty()) return;
+
+        Map<Integer, UserEntity> users = loadUsers(conn, new LinkedHashSet<>(userIds));
+        Map<Integer, BookEntity> books = loadBooks(conn, new LinkedHashSet<>(bookIds));
+
+        for (int i = 0; i < reservations.size(); i++) {
+            ReservationEntity r = reservations.get(i);
+            r.setUser(users.get(userIds.get(i)));
+            r.setBook(books.get(bookIds.get(i)));
+        }
+    }
+
+    private Map<Integer, UserEntity> loadUsers(Connection conn, Set<Integer> ids) throws SQLException {
+        Map<Integer, UserEntity> users = new HashMap<>();
+        String sql = "SELECT users_id, username, first_name, last_name, email FROM users WHERE users_id = ANY(?)";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setArray(1, conn.createArrayOf("integer", ids.toArray()));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    UserEntity user = new UserEntity();
+                    user.setUsersId(rs.getInt("users_id"));
+                    user.setUsername(rs.getString("username"));
+                    user.setFirstName(rs.getString("first_name"));
+                    user.setLastName(rs.getString("last_name"));
+                    user.setEmail(rs.getString("email"));
+                    users.put(user.getUsersId(), user);
+                }
+            }
+        }
+        return users;
+    }
+
+    private Map<Integer, BookEntity> loadBooks(Connection conn, Set<Integer> ids) throws SQLException {
+        Map<Integer, BookEntity> books = new HashMap<>();
+        String sql = "SELECT books_id, title, isbn FROM books WHERE books_id = ANY(?)";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setArray(1, conn.createArrayOf("integer", ids.toArray()));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    BookEntity book = new BookEntity();
+                    book.setBooksId(rs.getInt("books_id"));
+                    book.setTitle(rs.getString("title"));
+                    book.setIsbn(rs.getString("isbn"));
+                    books.put(book.getBooksId(), book);
+                }
+            }
+        }
+        return books;
+    }
+
+    private static ReservationEntity mapReservation(ResultSet rs) throws SQLException {
+        ReservationEntity r = new ReservationEntity();
+        r.setReservationsId(rs.getInt("reservations_id"));
+        Timestamp ct = rs.getTimestamp("created_at");
+        r.setCreatedAt(ct != null ? ct.toLocalDateTime() : null);
+        Timestamp et = rs.getTimestamp("expires_at");
+        r.setExpiresAt(et != null ? et.toLocalDateTime() : null);
+        r.setStatus(rs.getString("status"));
+        return r;
+    }
+}
@@ -0,0 +1,126 @@
+package com.tuvarna.bg.library.service;
+
+import com.tuvarna.bg.library.util.ChangeNotifications;
+import com.tuvarna.bg.library.util.DatabaseUtil;
+
+import java.sql.*;
+import java.util.*;
+
+/**
+ * Application-wide cache of the "Author A, Author B" line shown under each book.
+ * <p>
+ * Lines are loaded in bulk (one {@code = ANY(?)} query for a whole page of books) into an LRU bounded by
+ * entry count, and every entry expires after a TTL as a backstop for changes that were never announced.
+ * Writers of {@code book_authors} call {@link #invalidate(int)}, and {@link ChangeNotifications} does the
+ * same for writes from other terminals; a bulk load that overlapped an invalidation returns its lines to
+ * the caller but doesn't cache them.
+ */
+public final class AuthorLineCache {
+    private static final AuthorLineCache INSTANCE = new AuthorLineCache();
+
+    public static final String UNKNOWN = "Unknown Author";
+
+    private static final String SQL = """
+            SELECT ba.books_id, STRING_AGG(DISTINCT a.full_name, ', ' ORDER BY a.full_name) AS authors
+            FROM book_authors ba
+            JOIN authors a ON a.authors_id = ba.authors_id
+            WHERE ba.books_id = ANY(?)
+            GROUP BY ba.books_id
+            """;
+
+    private record Entry(String line, long loadedAt) { }
+
+    // Override with -Dlibrary.authors.cacheEntries / -Dlibrary.authors.ttlSeconds (0 = never expire)
+    private final int maxEntries = Math.max(256, Integer.getInteger("library.authors.cacheEntries", 10_000));
+    private final long ttlNanos = Long.getLong("library.authors.ttlSeconds", 900) * 1_000_000_000L;
+
+    private final LinkedHashMap<Integer, Entry> cache = new LinkedHashMap<>(256, 0.75f, true) { // guarded by this
+        @Override protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+            return size() > maxEntries;
+        }
+    };
+    private long generation; // guarded by this; bumped by every invalidation
+
+    private AuthorLineCache() {
+        ChangeNotifications.subscribe(new ChangeNotifications.Listener() {
+            @Override public void onChanges(List<ChangeNotifications.ChangeEvent> events) {
+                for (ChangeNotifications.ChangeEvent e : events) {
+                    if (e.table == ChangeNotifications.Table.BOOK_AUTHORS
+                            || (e.table == ChangeNotifications.Table.BOOKS && e.op == ChangeNotifications.Op.DELETE)) {
+                        invalidate(e.id);
+                    }
+                }
+            }
+
+            @Override public void onResync() { invalidateAll(); }
+        });
+    }
+
+    public static AuthorLineCache getInstance() { return INSTANCE; }
+
+    /** The cached line of {@code bookId}, or null when it isn't cached (or has expired). Never touches the DB. */
+    public synchronized String getIfPresent(int bookId) {
+        Entry e = cache.get(bookId);
+        if (e == null) return null;
+        if (ttlNanos > 0 && System.nanoTime() - e.loadedAt >= ttlNanos) {
+            cache.remove(bookId);
+            return null;
+        }
+        return e.line;
+    }
+
+    public String get(int bookId) throws SQLException {
+        return getAll(List.of(bookId)).get(bookId);
+    }
+
+    /**
+     * Lines of all {@code bookIds}, loading the missing ones in a single query. Books without authors map
+     * to {@link #UNKNOWN}.
+     */
+    public Map<Integer, String> getAll(Collection<Integer> bookIds) throws SQLException {
+        Map<Integer, String> lines = new HashMap<>();
+        List<Integer> missing = new ArrayList<>();
+        for (Integer id : new LinkedHashSet<>(bookIds)) {
+            String line = getIfPresent(id);
+            if (line != null) lines.put(id, line);
+            else missing.add(id);
+        }
+        if (missing.isEmpty()) return lines;
+
+        long gen;
+        synchronized (this) { gen = generation; }
+
+        Map<Integer, String> loaded = new HashMap<>();
+        try (Connection conn = DatabaseUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement(SQL)) {
+            ps.setArray(1, conn.createArrayOf("integer", missing.toArray()));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String authors = rs.getString("authors");
+                    loaded.put(rs.getInt("books_id"), authors == null || authors.isBlank() ? UNKNOWN : authors);
+                }
+            }
+        }
+        for (Integer id : missing) loaded.putIfAbsent(id, UNKNOWN);
+
+        synchronized (this) {
+            if (generation == gen) {
+                long now = System.nanoTime();
+                loaded.forEach((id, line) -> cache.put(id, new Entry(line, now)));
+            }
+        }
+        lines.putAll(loaded);
+        return lines;
+    }
+
+    /** Call after changing the authors of {@code bookId} (or deleting the book). */
+    public synchronized void invalidate(int bookId) {
+        cache.remove(bookId);
+        generation++;
+    }
+
+    public synchronized void invalidateAll() {
+        cache.clear();
+        generation++;
+    }
+}
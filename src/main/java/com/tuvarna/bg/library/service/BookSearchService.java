@@ -0,0 +1,223 @@
+package com.tuvarna.bg.library.service;
+
+import com.tuvarna.bg.library.entity.BookEntity;
+import com.tuvarna.bg.library.entity.PublisherEntity;
+import com.tuvarna.bg.library.util.CancelToken;
+import com.tuvarna.bg.library.util.DatabaseUtil;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Ranked book search over the {@code books.search_doc} tsvector (title/ISBN, authors, genres,
+ * publisher, language/year), served from its GIN index. Every word of the query is matched as a
+ * prefix, so "harr pot" finds "Harry Potter" while the user is still typing.
+ * <p>
+ * {@link #fuzzySearch} is the typo-tolerant fallback ("hary poter") backed by pg_trgm.
+ */
+public class BookSearchService {
+
+    private static final int DEFAULT_LIMIT = Integer.getInteger("library.search.limit", 1000);
+    private static final int FUZZY_LIMIT = Integer.getInteger("library.search.fuzzyLimit", 50);
+
+    /** Quiet period before a search-as-you-type query is sent; 0 turns type-ahead off (search on demand only). */
+    public static final long TYPE_AHEAD_DEBOUNCE_MS = Long.getLong("library.search.debounceMs", 250L);
+
+    private static final String HIT_COLUMNS =
+            "SELECT b.books_id, b.title, b.summary, b.isbn, b.language, b.publication_year, " +
+            "       b.publishers_id, b.image_path, p.pub_name, " +
+            "       (SELECT COUNT(*) FROM book_copies bc WHERE bc.books_id = b.books_id) AS copy_count, ";
+
+    private volatile double fuzzyThreshold =
+            Double.parseDouble(System.getProperty("library.search.fuzzyThreshold", "0.3"));
+
+    /** One search result: the book plus what the admin table shows next to it. */
+    public static final class BookHit {
+        public final BookEntity book;
+        public final int copyCount;
+        public final double rank;
+
+        BookHit(BookEntity book, int copyCount, double rank) {
+            this.book = book;
+            this.copyCount = copyCount;
+            this.rank = rank;
+        }
+    }
+
+    public List<BookHit> search(String text, CancelToken cancel) throws SQLException {
+        return search(text, null, null, DEFAULT_LIMIT, cancel);
+    }
+
+    /**
+     * Text searches are capped at {@code library.search.limit} best-ranked hits; browsing (blank text) is not
+     * capped, since the caller is listing the catalogue rather than looking for something.
+     */
+    public List<BookHit> search(String text, Integer genreId, String language, CancelToken cancel) throws SQLException {
+        return search(text, genreId, language, toPrefixQuery(text) != null ? DEFAULT_LIMIT : 0, cancel);
+    }
+
+    /**
+     * @param text     free text; blank means "no text filter" (results ordered by title)
+     * @param genreId  optional genre filter
+     * @param language optional language filter (case-insensitive)
+     * @param limit    maximum number of hits; 0 = no limit
+     * @param cancel   receives the statement so a superseded search can be cancelled server-side
+     */
+    public List<BookHit> search(String text, Integer genreId, String language, int limit,
+                                CancelToken cancel) throws SQLException {
+        String tsQuery = toPrefixQuery(text);
+
+        StringBuilder sql = new StringBuilder()
+                .append(HIT_COLUMNS)
+                .append(tsQuery != null ? "ts_rank_cd(b.search_doc, q.query) AS rank " : "0 AS rank ")
+                .append("FROM books b ")
+                .append("LEFT JOIN publishers p ON p.publishers_id = b.publishers_id ");
+
+        List<Object> params = new ArrayList<>();
+        if (tsQuery != null) {
+            sql.append("CROSS JOIN to_tsquery('simple', ?) AS q(query) ");
+            params.add(tsQuery);
+        }
+        sql.append("WHERE TRUE ");
+        if (tsQuery != null) {
+            sql.append("AND b.search_doc @@ q.query ");
+        }
+        appendFilters(sql, params, genreId, language);
+        sql.append(tsQuery != null ? "ORDER BY rank DESC, b.title " : "ORDER BY b.title ");
+        if (limit > 0) {
+            sql.append("LIMIT ?");
+            params.add(limit);
+        }
+
+        try (Connection conn = DatabaseUtil.getConnection()) {
+            return runQuery(conn, sql.toString(), params, cancel);
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Fuzzy (pg_trgm) search
+    // ---------------------------------------------------------------------
+
+    public double getFuzzyThreshold() { return fuzzyThreshold; }
+
+    /** Minimum word similarity (0..1) for a fuzzy hit; lower finds more typos but also more noise. */
+    public void setFuzzyThreshold(double fuzzyThreshold) {
+        if (fuzzyThreshold < 0 || fuzzyThreshold > 1) throw new IllegalArgumentException("threshold must be in [0, 1]");
+        this.fuzzyThreshold = fuzzyThreshold;
+    }
+
+    public List<BookHit> fuzzySearch(String text, Integer genreId, String language, CancelToken cancel) throws SQLException {
+        return fuzzySearch(text, genreId, language, FUZZY_LIMIT, cancel);
+    }
+
+    /**
+     * Typo-tolerant search on titles and author names, ranked by trigram word similarity and capped at
+     * {@code limit}. The {@code <%} operator is answered from the gin_trgm_ops indexes on books.title
+     * and authors.full_name; the threshold is applied per transaction via set_config. Returns no hits
+     * when pg_trgm couldn't be installed ({@link DatabaseUtil#isFuzzySearchAvailable()}).
+     */
+    public List<BookHit> fuzzySearch(String text, Integer genreId, String language, int limit,
+                                     CancelToken cancel) throws SQLException {
+        if (text == null || text.isBlank()) return search(text, genreId, language, limit, cancel);
+        if (!DatabaseUtil.isFuzzySearchAvailable()) return new ArrayList<>();
+        String term = text.trim();
+
+        StringBuilder sql = new StringBuilder()
+                .append("WITH title_hits AS ( ")
+                .append("    SELECT books_id, word_similarity(?, title) AS sim FROM books WHERE ? <% title), ")
+                .append("author_hits AS ( ")
+                .append("    SELECT ba.books_id, MAX(word_similarity(?, a.full_name)) AS sim ")
+                .append("    FROM authors a JOIN book_authors ba ON ba.authors_id = a.authors_id ")
+                .append("    WHERE ? <% a.full_name GROUP BY ba.books_id), ")
+                .append("hits AS ( ")
+                .append("    SELECT books_id, MAX(sim) AS sim ")
+                .append("    FROM (SELECT * FROM title_hits UNION ALL SELECT * FROM author_hits) h GROUP BY books_id) ")
+                .append(HIT_COLUMNS)
+                .append("hits.sim AS rank ")
+                .append("FROM hits ")
+                .append("JOIN books b ON b.books_id = hits.books_id ")
+                .append("LEFT JOIN publishers p ON p.publishers_id = b.publishers_id ")
+                .append("WHERE TRUE ");
+
+        List<Object> params = new ArrayList<>(List.of(term, term, term, term));
+        appendFilters(sql, params, genreId, language);
+        sql.append("ORDER BY rank DESC, b.title LIMIT ?");
+        params.add(limit);
+
+        try (Connection conn = DatabaseUtil.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT set_config('pg_trgm.word_similarity_threshold', ?, true)")) {
+                ps.setString(1, Double.toString(fuzzyThreshold));
+                ps.execute();
+            }
+            List<BookHit> hits = runQuery(conn, sql.toString(), params, cancel);
+            conn.commit();
+            return hits;
+        }
+    }
+
+    // ---------------------------------------------------------------------
+
+    private static void appendFilters(StringBuilder sql, List<Object> params, Integer genreId, String language) {
+        if (genreId != null) {
+            sql.append("AND EXISTS (SELECT 1 FROM book_genres bg WHERE bg.books_id = b.books_id AND bg.genres_id = ?) ");
+            params.add(genreId);
+        }
+        if (language != null && !language.isBlank()) {
+            sql.append("AND LOWER(b.language) = LOWER(?) ");
+            params.add(language);
+        }
+    }
+
+    private static List<BookHit> runQuery(Connection conn, String sql, List<Object> params,
+                                          CancelToken cancel) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            cancel.register(ps);
+            for (int i = 0; i < params.size(); i++) ps.setObject(i + 1, params.get(i));
+            try (ResultSet rs = ps.executeQuery()) {
+                List<BookHit> hits = new ArrayList<>();
+                while (rs.next()) hits.add(mapHit(rs));
+                return hits;
+            }
+        }
+    }
+
+    /**
+     * Turns user input into a prefix tsquery ({@code harr:* & pot:*}), or null if nothing searchable is left.
+     * Everything except letters and digits is dropped, so the input can never be a malformed tsquery.
+     */
+    static String toPrefixQuery(String text) {
+        if (text == null) return null;
+        // ISBNs are stored as bare digits: "978-0-13-468599-1" must stay one term
+        String normalized = text.toLowerCase(Locale.ROOT).replaceAll("(?<=\\d)-(?=\\d)", "");
+        StringBuilder q = new StringBuilder();
+        for (String term : normalized.split("[^\\p{L}\\p{N}]+")) {
+            if (term.isEmpty()) continue;
+            if (q.length() > 0) q.append(" & ");
+            q.append(term).append(":*");
+        }
+        return q.length() == 0 ? null : q.toString();
+    }
+
+    static BookHit mapHit(ResultSet rs) throws SQLException {
+        BookEntity b = new BookEntity();
+        b.setBooksId(rs.getInt("books_id"));
+        b.setTitle(rs.getString("title"));
+        b.setSummary(rs.getString("summary"));
+        b.setIsbn(rs.getString("isbn"));
+        b.setLanguage(rs.getString("language"));
+        int year = rs.getInt("publication_year");
+        if (!rs.wasNull()) b.setPublicationYear(year);
+        b.setImagePath(rs.getString("image_path"));
+
+        PublisherEntity publisher = new PublisherEntity();
+        publisher.setPublishersId(rs.getInt("publishers_id"));
+        publisher.setPubName(rs.getString("pub_name"));
+        b.setPublisher(publisher);
+
+        return new BookHit(b, rs.getInt("copy_count"), rs.getDouble("rank"));
+    }
+}
@@ -0,0 +1,257 @@
+package com.tuvarna.bg.library.service;
+
+import com.tuvarna.bg.library.entity.BookEntity;
+import com.tuvarna.bg.library.util.BackgroundTasks;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Application-wide cover loader.
+ * <p>
+ * Covers are decoded on a small background pool, concurrent requests for the same cover share one
+ * load, and decoded images are kept in an LRU bounded by their pixel size (width * height * 4 bytes).
+ */
+public final class CoverImageService {
+    private static final Logger LOGGER = Logger.getLogger(CoverImageService.class.getName());
+    private static final CoverImageService INSTANCE = new CoverImageService();
+
+    private static final String PLACEHOLDER = "/com/tuvarna/bg/library/images/placeholder.png";
+    private static final String VIEW_KEY = "cover-image-key";
+
+    // Override with -Dlibrary.covers.cacheBytes / -Dlibrary.covers.loaderThreads
+    private final long maxBytes = Long.getLong("library.covers.cacheBytes", 64L * 1024 * 1024);
+    private final ExecutorService loader;
+
+    private final LinkedHashMap<String, Image> cache = new LinkedHashMap<>(256, 0.75f, true); // guarded by this
+    private long cachedBytes;                                                                 // guarded by this
+    private final Map<String, CompletableFuture<Image>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong deduplicated = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private CoverImageService() {
+        AtomicInteger n = new AtomicInteger();
+        loader = Executors.newFixedThreadPool(Integer.getInteger("library.covers.loaderThreads", 4), r -> {
+            Thread t = new Thread(r, "cover-loader-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public static CoverImageService getInstance() { return INSTANCE; }
+
+    /**
+     * Shows the cover of {@code book} in {@code view}. Safe for recycled cells: if the view has been
+     * asked to show another cover by the time this one finishes, the late result is dropped.
+     * Must be called on the FX thread.
+     */
+    public void loadInto(ImageView view, BookEntity book, double targetWidth) {
+        if (book == null) {
+            view.getProperties().remove(VIEW_KEY);
+            view.setImage(null);
+            return;
+        }
+        String key = cacheKey(book, targetWidth);
+        view.getProperties().put(VIEW_KEY, key);
+
+        Image cached = getCached(key);
+        if (cached != null) {
+            view.setImage(cached);
+            return;
+        }
+        view.setImage(null);
+        loadMissing(key, book, targetWidth).thenAccept(img -> BackgroundTasks.onFxThread(() -> {
+            if (key.equals(view.getProperties().get(VIEW_KEY))) view.setImage(img);
+        }));
+    }
+
+    /** Loads (or returns the cached) cover scaled to {@code targetWidth}; completes with null if there is none. */
+    public CompletableFuture<Image> load(BookEntity book, double targetWidth) {
+        String key = cacheKey(book, targetWidth);
+        Image cached = getCached(key);
+        if (cached != null) return CompletableFuture.completedFuture(cached);
+        return loadMissing(key, book, targetWidth);
+    }
+
+    // The caller has already looked the key up in the cache (and counted the miss)
+    private CompletableFuture<Image> loadMissing(String key, BookEntity book, double targetWidth) {
+        CompletableFuture<Image> existing = inFlight.get(key);
+        if (existing != null) {
+            deduplicated.incrementAndGet();
+            return existing;
+        }
+        CompletableFuture<Image> created = new CompletableFuture<>();
+        existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            deduplicated.incrementAndGet();
+            return existing;
+        }
+
+        loader.execute(() -> {
+            try {
+                Image img = decodeFirst(candidateUrls(book, targetWidth), targetWidth);
+                if (img != null) put(key, img);
+                else failures.incrementAndGet();
+                created.complete(img);
+            } catch (RuntimeException e) {
+                failures.incrementAndGet();
+                LOGGER.log(Level.FINE, "Cover load failed for " + key, e);
+                created.complete(null);
+            } finally {
+                inFlight.remove(key, created);
+            }
+        });
+        return created;
+    }
+
+    /* ------------------------- cache ------------------------- */
+
+    private synchronized Image getCached(String key) {
+        Image img = cache.get(key);
+        if (img != null) hits.incrementAndGet();
+        else misses.incrementAndGet();
+        return img;
+    }
+
+    private synchronized void put(String key, Image img) {
+        Image previous = cache.put(key, img);
+        if (previous != null) cachedBytes -= bytesOf(previous);
+        cachedBytes += bytesOf(img);
+
+        Iterator<Map.Entry<String, Image>> it = cache.entrySet().iterator();
+        while (cachedBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Image> eldest = it.next();
+            if (eldest.getKey().equals(key)) continue; // never evict what we just added
+            cachedBytes -= bytesOf(eldest.getValue());
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private static long bytesOf(Image img) {
+        return (long) img.getWidth() * (long) img.getHeight() * 4L;
+    }
+
+    private static String cacheKey(BookEntity b, double width) {
+        return b.getImagePath() + "|" + b.getIsbn() + "@" + (int) Math.round(width);
+    }
+
+    /* ------------------------- loading ------------------------- */
+
+    // Runs on the loader pool (touches the file system)
+    private List<String> candidateUrls(BookEntity b, double targetWidth) {
+        List<String> candidates = new ArrayList<>();
+        String p = b.getImagePath();
+        int thumbWidth = ThumbnailGenerator.thumbnailWidthFor(targetWidth);
+
+        if (p != null && !p.isBlank()) {
+            if (CoverStore.isStoredPath(p)) {
+                // content-addressed: exactly one place to look
+                addLocal(candidates, Paths.get(p).toAbsolutePath(), thumbWidth);
+            } else if (p.startsWith("http://") || p.startsWith("https://") || p.startsWith("file:")) {
+                // already a URL
+                candidates.add(p);
+            } else {
+                // legacy path: as absolute/local file, preferring the pre-generated thumbnail
+                Path abs = Paths.get(p).toAbsolutePath();
+                addLocal(candidates, abs, thumbWidth);
+                // also try library_images/<filename>
+                Path fn = abs.getFileName();
+                if (fn != null) {
+                    addLocal(candidates, Paths.get("library_images", fn.toString()).toAbsolutePath(), thumbWidth);
+                }
+            }
+        }
+
+        // optional: packaged resource by ISBN (e.g. /covers/978...jpg)
+        if (b.getIsbn() != null && !b.getIsbn().isBlank()) {
+            URL byIsbn = getClass().getResource("/covers/" + b.getIsbn() + ".jpg");
+            if (byIsbn != null) candidates.add(byIsbn.toExternalForm());
+        }
+
+        URL ph = getClass().getResource(PLACEHOLDER);
+        if (ph != null) candidates.add(ph.toExternalForm());
+        return candidates;
+    }
+
+    private static void addLocal(List<String> candidates, Path original, int thumbWidth) {
+        if (thumbWidth > 0) {
+            Path thumb = ThumbnailGenerator.thumbnailPath(original, thumbWidth);
+            if (Files.exists(thumb)) candidates.add(thumb.toUri().toString());
+        }
+        candidates.add(original.toUri().toString());
+    }
+
+    // Runs on the loader pool: synchronous decode, downsampled while decoding
+    private Image decodeFirst(List<String> candidates, double targetWidth) {
+        for (String url : candidates) {
+            try {
+                Image img = new Image(url, targetWidth, 0, true, true, false);
+                if (!img.isError()) return img;
+            } catch (RuntimeException ignore) { }
+        }
+        return null;
+    }
+
+    public void shutdown() {
+        LOGGER.info("Cover cache: " + getStats());
+        loader.shutdownNow();
+    }
+
+    /* ------------------------- metrics ------------------------- */
+
+    public synchronized Stats getStats() {
+        return new Stats(hits.get(), misses.get(), deduplicated.get(), failures.get(), evictions.get(),
+                cache.size(), cachedBytes, maxBytes);
+    }
+
+    public static final class Stats {
+        public final long hits, misses, deduplicated, failures, evictions;
+        public final int entries;
+        public final long bytes, maxBytes;
+
+        Stats(long hits, long misses, long deduplicated, long failures, long evictions,
+              int entries, long bytes, long maxBytes) {
+            this.hits = hits;
+            this.misses = misses;
+            this.deduplicated = deduplicated;
+            this.failures = failures;
+            this.evictions = evictions;
+            this.entries = entries;
+            this.bytes = bytes;
+            this.maxBytes = maxBytes;
+        }
+
+        public double hitRatio() {
+            long total = hits + misses;
+            return total == 0 ? 0.0 : (double) hits / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hits=%d misses=%d hitRatio=%.2f deduplicated=%d failures=%d evictions=%d entries=%d bytes=%d/%d",
+                    hits, misses, hitRatio(), deduplicated, failures, evictions, entries, bytes, maxBytes);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.tuvarna.bg.library.service;
+
+import com.tuvarna.bg.library.util.DatabaseUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.*;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Content-addressed cover storage.
+ * <p>
+ * A cover is stored once under the SHA-256 of its bytes, sharded by the first two byte pairs:
+ * {@code library_images/ab/cd/abcdef...89.jpg}. Uploading the same file again returns the existing
+ * path, and the path in {@code books.image_path} is all the loader needs to open the file directly.
+ * <p>
+ * Legacy {@code <millis>_<name>} covers can be moved into the store with:
+ * <pre>java -cp ... com.tuvarna.bg.library.service.CoverStore</pre>
+ */
+public final class CoverStore {
+    private static final Logger LOGGER = Logger.getLogger(CoverStore.class.getName());
+
+    public static final Path ROOT = Paths.get("library_images");
+
+    // library_images/ab/cd/<64 hex>.<ext>
+    private static final Pattern STORED = Pattern.compile("library_images/[0-9a-f]{2}/[0-9a-f]{2}/[0-9a-f]{64}\\.[a-z0-9]+");
+
+    private CoverStore() { }
+
+    /** True if {@code imagePath} was produced by {@link #store} (forward or back slashes). */
+    public static boolean isStoredPath(String imagePath) {
+        return imagePath != null && STORED.matcher(imagePath.replace('\\', '/')).matches();
+    }
+
+    /**
+     * Copies {@code source} into the store (unless identical content is already there), makes sure its
+     * thumbnails exist, and returns the relative path to record in {@code books.image_path}.
+     */
+    public static String store(Path source) throws IOException {
+        Files.createDirectories(ROOT);
+        // Hash while copying to a temp file, so the source is read exactly once
+        Path tmp = Files.createTempFile(ROOT, "upload-", ".tmp");
+        try {
+            MessageDigest sha = sha256();
+            try (InputStream in = new DigestInputStream(Files.newInputStream(source), sha)) {
+                Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            String hash = HexFormat.of().formatHex(sha.digest());
+
+            Path target = pathFor(hash, extensionOf(source));
+            if (Files.exists(target)) {
+                LOGGER.fine("Cover already stored: " + target);
+            } else {
+                Files.createDirectories(target.getParent());
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+            }
+            ensureThumbnails(target);
+            return target.toString().replace('\\', '/');
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    static Path pathFor(String hash, String ext) {
+        return ROOT.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash + "." + ext);
+    }
+
+    private static void ensureThumbnails(Path stored) {
+        boolean missing = ThumbnailGenerator.WIDTHS.stream()
+                .anyMatch(w -> !Files.exists(ThumbnailGenerator.thumbnailPath(stored, w)));
+        if (!missing) return;
+        try {
+            ThumbnailGenerator.generate(stored);
+        } catch (IOException e) {
+            // not fatal: the cover loader falls back to the original until a backfill runs
+            LOGGER.log(Level.WARNING, "Thumbnail generation failed for " + stored, e);
+        }
+    }
+
+    private static String extensionOf(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String ext = dot > 0 ? name.substring(dot + 1).toLowerCase(Locale.ROOT) : "";
+        if (ext.equals("jpeg")) return "jpg";
+        return ext.matches("[a-z0-9]{1,5}") ? ext : "img";
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // mandatory algorithm on every JRE
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // One-off migration of legacy covers
+    // ---------------------------------------------------------------------
+
+    /** Moves every book whose cover is not yet content-addressed into the store; returns rows updated. */
+    public static int migrateLegacyCovers() throws SQLException {
+        Map<Integer, String> legacy = new LinkedHashMap<>();
+        try (Connection conn = DatabaseUtil.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(
+                     "SELECT books_id, image_path FROM books WHERE image_path IS NOT NULL AND image_path <> ''")) {
+            while (rs.next()) {
+                String path = rs.getString("image_path");
+                if (!isStoredPath(path)) legacy.put(rs.getInt("books_id"), path);
+            }
+        }
+
+        int updated = 0;
+        try (Connection conn = DatabaseUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement("UPDATE books SET image_path = ? WHERE books_id = ?")) {
+            for (Map.Entry<Integer, String> e : legacy.entrySet()) {
+                Path source = resolveLegacy(e.getValue());
+                if (source == null) {
+                    LOGGER.warning("Book " + e.getKey() + ": cover not found at " + e.getValue());
+                    continue;
+                }
+                try {
+                    ps.setString(1, store(source));
+                    ps.setInt(2, e.getKey());
+                    updated += ps.executeUpdate();
+                } catch (IOException ex) {
+                    LOGGER.log(Level.WARNING, "Book " + e.getKey() + ": " + ex.getMessage());
+                }
+            }
+        }
+        return updated;
+    }
+
+    private static Path resolveLegacy(String imagePath) {
+        if (imagePath.startsWith("http://") || imagePath.startsWith("https://")) return null;
+        Path p = imagePath.startsWith("file:") ? Paths.get(URI.create(imagePath)) : Paths.get(imagePath);
+        if (Files.isRegularFile(p)) return p;
+        Path fn = p.getFileName();
+        if (fn != null && Files.isRegularFile(ROOT.resolve(fn))) return ROOT.resolve(fn);
+        return null;
+    }
+
+    public static void main(String[] args) throws SQLException {
+        try {
+            System.out.println("Moved " + migrateLegacyCovers() + " cover(s) into " + ROOT.toAbsolutePath());
+        } finally {
+            DatabaseUtil.shutdown();
+        }
+    }
+}
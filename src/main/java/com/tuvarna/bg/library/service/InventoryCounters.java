@@ -0,0 +1,92 @@
+package com.tuvarna.bg.library.service;
+
+import com.tuvarna.bg.library.util.DatabaseUtil;
+
+import java.sql.*;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Checks the trigger-maintained {@code library_counters} (migration V4) against the real row counts and
+ * repairs any drift. Since V11 each counter is the sum of its shards; a repair folds them back into shard 0. Triggers keep the counters exact for normal writes; drift only comes from things
+ * that bypass row triggers (TRUNCATE, a trigger disabled for a bulk load, manual edits).
+ * {@link MaintenanceJobs} runs it periodically.
+ */
+public final class InventoryCounters {
+    private static final Logger LOGGER = Logger.getLogger(InventoryCounters.class.getName());
+
+    // counter name -> query that computes it from scratch
+    private static final Map<String, String> SOURCES = new LinkedHashMap<>();
+    static {
+        SOURCES.put("books", "SELECT COUNT(*) FROM books");
+        SOURCES.put("users", "SELECT COUNT(*) FROM users");
+        SOURCES.put("book_copies", "SELECT COUNT(*) FROM book_copies");
+        SOURCES.put("available_copies", "SELECT COUNT(*) FROM book_copies WHERE status = 'AVAILABLE'");
+        SOURCES.put("active_loans", "SELECT COUNT(*) FROM loans WHERE returned_at IS NULL");
+    }
+
+    private InventoryCounters() { }
+
+    /**
+     * Recounts every counter and overwrites the ones that drifted.
+     * <p>
+     * The counter rows are locked first, in (name, shard) order, the same order the bump trigger locks a
+     * shard's rows in. Writers still in flight hold them until they commit, so we wait for
+     * those; writers that start afterwards block on their trigger's shard lock until we commit, and then apply
+     * their delta on top of the corrected value. Each recount runs in its own READ COMMITTED snapshot, which
+     * therefore sees exactly the writes the counters already reflect.
+     *
+     * @return drift per repaired counter (stored minus actual); empty when everything matched
+     */
+    public static Map<String, Long> reconcile() throws SQLException {
+        Map<String, Long> drift = new LinkedHashMap<>();
+        try (Connection conn = DatabaseUtil.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                Map<String, Long> stored = new HashMap<>();
+                try (Statement st = conn.createStatement();
+                     ResultSet rs = st.executeQuery(
+                             "SELECT name, value FROM library_counters ORDER BY name, shard FOR UPDATE")) {
+                    while (rs.next()) stored.merge(rs.getString(1), rs.getLong(2), Long::sum);
+                }
+
+                try (PreparedStatement upsert = conn.prepareStatement(
+                        "INSERT INTO library_counters (name, shard, value) VALUES (?, 0, ?) " +
+                        "ON CONFLICT (name, shard) DO UPDATE SET value = EXCLUDED.value, updated_at = now()");
+                     PreparedStatement clearShards = conn.prepareStatement(
+                        "UPDATE library_counters SET value = 0, updated_at = now() " +
+                        "WHERE name = ? AND shard <> 0 AND value <> 0")) {
+                    for (Map.Entry<String, String> e : SOURCES.entrySet()) {
+                        long actual;
+                        try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery(e.getValue())) {
+                            rs.next();
+                            actual = rs.getLong(1);
+                        }
+                        Long value = stored.get(e.getKey());
+                        if (value != null && value == actual) continue;
+
+                        drift.put(e.getKey(), value != null ? value - actual : -actual);
+                        upsert.setString(1, e.getKey());
+                        upsert.setLong(2, actual);
+                        upsert.addBatch();
+                        clearShards.setString(1, e.getKey());
+                        clearShards.addBatch();
+                    }
+                    if (!drift.isEmpty()) {
+                        upsert.executeBatch();
+                        clearShards.executeBatch();
+                    }
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+
+        if (!drift.isEmpty()) LOGGER.warning("Repaired drifted counters (stored - actual): " + drift);
+        return drift;
+    }
+}
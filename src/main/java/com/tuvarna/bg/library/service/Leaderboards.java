@@ -0,0 +1,67 @@
+package com.tuvarna.bg.library.service;
+
+import com.tuvarna.bg.library.util.DatabaseUtil;
+
+import java.sql.*;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the materialized top-books / top-borrowers leaderboards (migration V5) fresh.
+ * <p>
+ * Views are refreshed {@code CONCURRENTLY}, so the Reports tab keeps reading the previous contents while a
+ * refresh runs. Each refresh stamps {@code library_leaderboards.refreshed_at}, which the cards show as
+ * their age. With several app instances on one database only one of them refreshes at a time.
+ * {@link MaintenanceJobs} runs it periodically.
+ */
+public final class Leaderboards {
+    private static final Logger LOGGER = Logger.getLogger(Leaderboards.class.getName());
+
+    /** Leaderboard windows in days; 0 = all time. Must match the VALUES list in migration V5. */
+    public static final List<Integer> WINDOWS = List.of(0, 7, 30, 365);
+
+    private static final List<String> VIEWS = List.of("library_top_books", "library_top_borrowers");
+
+    // pg_try_advisory_xact_lock key for leaderboard refreshes
+    private static final long LOCK_KEY = 0x4C49425F4C445242L; // "LIB_LDRB"
+
+    private Leaderboards() { }
+
+    /**
+     * Refreshes every leaderboard view. Returns false without doing anything when another session is
+     * already refreshing (its result will be just as fresh).
+     */
+    public static boolean refresh() throws SQLException {
+        long start = System.nanoTime();
+        try (Connection conn = DatabaseUtil.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                try (PreparedStatement ps = conn.prepareStatement("SELECT pg_try_advisory_xact_lock(?)")) {
+                    ps.setLong(1, LOCK_KEY);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (rs.next() && !rs.getBoolean(1)) {
+                            conn.rollback();
+                            return false;
+                        }
+                    }
+                }
+
+                try (Statement st = conn.createStatement();
+                     PreparedStatement stamp = conn.prepareStatement(
+                             "UPDATE library_leaderboards SET refreshed_at = clock_timestamp() WHERE name = ?")) {
+                    for (String view : VIEWS) {
+                        st.execute("REFRESH MATERIALIZED VIEW CONCURRENTLY " + view);
+                        stamp.setString(1, view);
+                        stamp.executeUpdate();
+                    }
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+        LOGGER.fine(() -> "Leaderboards refreshed in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        return true;
+    }
+}
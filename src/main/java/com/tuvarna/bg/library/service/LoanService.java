@@ -0,0 +1,201 @@
+package com.tuvarna.bg.library.service;
+
+import com.tuvarna.bg.library.util.CancelToken;
+import com.tuvarna.bg.library.util.DatabaseUtil;
+import com.tuvarna.bg.library.util.Transactions;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Loan desk operations. Each one is a single transaction that claims the copies it touches with
+ * conditional updates, so two desks working at once can never hand out the same copy.
+ */
+public class LoanService {
+
+    /** Thrown when the requested copy was taken (or changed status) before the checkout reached it. */
+    public static class CopyUnavailableException extends SQLException {
+        private static final long serialVersionUID = 1L;
+
+        public CopyUnavailableException(String message) {
+            super(message);
+        }
+    }
+
+    /** Result of a checkout: the new loan and the copy that went out. */
+    public static final class Checkout {
+        public final int loanId;
+        public final int copyId;
+
+        Checkout(int loanId, int copyId) {
+            this.loanId = loanId;
+            this.copyId = copyId;
+        }
+    }
+
+    /** A book in the checkout picker with its current number of AVAILABLE copies. */
+    public static final class BookAvailability {
+        public final int booksId;
+        public final String title;
+        public final String isbn;
+        public final int available;
+
+        BookAvailability(int booksId, String title, String isbn, int available) {
+            this.booksId = booksId;
+            this.title = title;
+            this.isbn = isbn;
+            this.available = available;
+        }
+
+        @Override
+        public String toString() {
+            return title + (isbn != null ? " (" + isbn + ")" : "") + " — " + available + " available";
+        }
+    }
+
+    /** Outcome of a check-in batch. */
+    public static final class CheckinResult {
+        public final List<Integer> returned = new ArrayList<>();
+        public final List<Integer> notOnLoan = new ArrayList<>(); // unknown ids or copies not lent out
+        public int reservationsReady;                            // returned copies now held for a reservation
+    }
+
+    // Claiming the copy and inserting the loan is one statement: the UPDATE only matches while the copy is
+    // still AVAILABLE, and a competing checkout blocked on the same row re-checks that condition after we
+    // commit, finds LOANED, claims nothing and therefore inserts nothing.
+    private static final String CHECKOUT_COPY_SQL =
+            "WITH claimed AS (" +
+            "    UPDATE book_copies SET status = 'LOANED' " +
+            "    WHERE copies_id = ? AND status = 'AVAILABLE' " +
+            "    RETURNING copies_id) " +
+            "INSERT INTO loans (users_id, staff_id, copy_id, due_date) " +
+            "SELECT ?, ?, copies_id, ? FROM claimed " +
+            "RETURNING loans_id, copy_id";
+
+    // Same, but the copy is picked server-side: the first AVAILABLE copy of the book that no other
+    // checkout is holding right now. SKIP LOCKED lets concurrent checkouts of one title each take a
+    // different copy instead of queueing behind the same row.
+    private static final String CHECKOUT_BOOK_SQL =
+            "WITH picked AS (" +
+            "    SELECT copies_id FROM book_copies " +
+            "    WHERE books_id = ? AND status = 'AVAILABLE' " +
+            "    ORDER BY copies_id LIMIT 1 " +
+            "    FOR UPDATE SKIP LOCKED), " +
+            "claimed AS (" +
+            "    UPDATE book_copies bc SET status = 'LOANED' FROM picked " +
+            "    WHERE bc.copies_id = picked.copies_id AND bc.status = 'AVAILABLE' " +
+            "    RETURNING bc.copies_id) " +
+            "INSERT INTO loans (users_id, staff_id, copy_id, due_date) " +
+            "SELECT ?, ?, copies_id, ? FROM claimed " +
+            "RETURNING loans_id, copy_id";
+
+    private static final String CLOSE_LOAN_SQL =
+            "UPDATE loans SET returned_at = now() WHERE copy_id = ? AND returned_at IS NULL";
+
+    private static final String CHECKOUT_BOOKS_SQL =
+            "SELECT b.books_id, b.title, b.isbn, " +
+            "       (SELECT COUNT(*) FROM book_copies bc " +
+            "        WHERE bc.books_id = b.books_id AND bc.status = 'AVAILABLE') AS available " +
+            "FROM books b ";
+
+    /**
+     * Lends {@code copyId} to {@code userId}. Serialization failures and deadlocks are retried.
+     *
+     * @throws CopyUnavailableException if the copy is no longer AVAILABLE
+     */
+    public Checkout checkout(int userId, Integer staffId, int copyId, LocalDate dueDate) throws SQLException {
+        return runCheckout(CHECKOUT_COPY_SQL, copyId, userId, staffId, dueDate,
+                "Copy #" + copyId + " is no longer available");
+    }
+
+    /**
+     * Lends any available copy of {@code bookId} to {@code userId}.
+     *
+     * @throws CopyUnavailableException if every copy of the book is out (or being checked out right now)
+     */
+    public Checkout checkoutBook(int userId, Integer staffId, int bookId, LocalDate dueDate) throws SQLException {
+        return runCheckout(CHECKOUT_BOOK_SQL, bookId, userId, staffId, dueDate,
+                "No copy of this book is available");
+    }
+
+    /**
+     * Books for the checkout picker, matched by title/author/ISBN prefix like the catalogue search
+     * (blank text = first {@code limit} books by title), each with its live available count.
+     */
+    public List<BookAvailability> findBooksForCheckout(String text, int limit, CancelToken cancel) throws SQLException {
+        String tsQuery = BookSearchService.toPrefixQuery(text);
+        String sql = CHECKOUT_BOOKS_SQL +
+                (tsQuery != null ? "WHERE b.search_doc @@ to_tsquery('simple', ?) " : "") +
+                "ORDER BY b.title, b.books_id LIMIT ?";
+
+        try (Connection conn = DatabaseUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            int i = 1;
+            if (tsQuery != null) ps.setString(i++, tsQuery);
+            ps.setInt(i, limit);
+            cancel.register(ps);
+            try (ResultSet rs = ps.executeQuery()) {
+                List<BookAvailability> books = new ArrayList<>();
+                while (rs.next()) {
+                    books.add(new BookAvailability(rs.getInt("books_id"), rs.getString("title"),
+                            rs.getString("isbn"), rs.getInt("available")));
+                }
+                return books;
+            }
+        }
+    }
+
+    public CheckinResult checkin(int copyId) throws SQLException {
+        return checkin(List.of(copyId));
+    }
+
+    /**
+     * Returns a cart of scanned copies in one transaction: closes each copy's open loan and hands the copy
+     * to {@link ReservationEngine#shelve} (next reservation in line, else AVAILABLE), both as JDBC batches.
+     * Copies without an open loan are reported back and left untouched. Duplicate scans count once.
+     */
+    public CheckinResult checkin(Collection<Integer> copyIds) throws SQLException {
+        // ascending order: two desks returning overlapping carts lock rows in the same order
+        List<Integer> ids = new ArrayList<>(new TreeSet<>(copyIds));
+        if (ids.isEmpty()) return new CheckinResult();
+
+        return Transactions.run(conn -> {
+            CheckinResult result = new CheckinResult();
+
+            try (PreparedStatement ps = conn.prepareStatement(CLOSE_LOAN_SQL)) {
+                for (int id : ids) {
+                    ps.setInt(1, id);
+                    ps.addBatch();
+                }
+                int[] counts = ps.executeBatch();
+                for (int i = 0; i < ids.size(); i++) {
+                    (counts[i] > 0 ? result.returned : result.notOnLoan).add(ids.get(i));
+                }
+            }
+            if (result.returned.isEmpty()) return result;
+
+            result.reservationsReady = ReservationEngine.shelve(conn, result.returned);
+            return result;
+        });
+    }
+
+    private Checkout runCheckout(String sql, int target, int userId, Integer staffId, LocalDate dueDate,
+                                 String unavailableMessage) throws SQLException {
+        return Transactions.run(conn -> {
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setInt(1, target);
+                ps.setInt(2, userId);
+                if (staffId != null) ps.setInt(3, staffId); else ps.setNull(3, Types.INTEGER);
+                ps.setDate(4, Date.valueOf(dueDate));
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) throw new CopyUnavailableException(unavailableMessage);
+                    return new Checkout(rs.getInt("loans_id"), rs.getInt("copy_id"));
+                }
+            }
+        });
+    }
+}
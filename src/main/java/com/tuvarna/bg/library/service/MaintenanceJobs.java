@@ -0,0 +1,76 @@
+package com.tuvarna.bg.library.service;
+
+import com.tuvarna.bg.library.util.DatabaseUtil;
+import com.tuvarna.bg.library.util.JobScheduler;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * The app's periodic sweeps, run by one {@link JobScheduler} per process (each job runs once per period
+ * across all instances). Periods are in minutes and can be overridden with system properties;
+ * 0 disables a job.
+ */
+public final class MaintenanceJobs {
+    private static final Logger LOGGER = Logger.getLogger(MaintenanceJobs.class.getName());
+
+    public static final String OVERDUE_SWEEP = "overdue-sweep";
+    public static final String RESERVATION_EXPIRY = "reservation-expiry";
+    public static final String LEADERBOARDS_REFRESH = "leaderboards-refresh";
+    public static final String COUNTERS_RECONCILE = "counters-reconcile";
+
+    private static JobScheduler scheduler;
+
+    private MaintenanceJobs() { }
+
+    public static synchronized void start() {
+        if (scheduler != null) return;
+        scheduler = new JobScheduler(2);
+
+        schedule(OVERDUE_SWEEP, "library.jobs.overdueMinutes", 15, Duration.ofSeconds(30),
+                MaintenanceJobs::markOverdueLoans);
+        schedule(RESERVATION_EXPIRY, "library.jobs.reservationExpiryMinutes", 5, Duration.ofSeconds(45),
+                () -> new ReservationEngine().expireStale());
+        schedule(LEADERBOARDS_REFRESH, "library.leaderboards.refreshMinutes", 10, Duration.ofMinutes(1),
+                Leaderboards::refresh);
+        // first run shortly after startup catches drift from while the app was down
+        schedule(COUNTERS_RECONCILE, "library.jobs.reconcileMinutes", 360, Duration.ofSeconds(15),
+                InventoryCounters::reconcile);
+    }
+
+    public static synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            scheduler = null;
+        }
+    }
+
+    /** Per-job metrics, in scheduling order; empty when the jobs aren't running. */
+    public static synchronized List<JobScheduler.JobStats> getStats() {
+        return scheduler != null ? scheduler.getStats() : List.of();
+    }
+
+    private static void schedule(String name, String property, long defaultMinutes, Duration initialDelay,
+                                 JobScheduler.Job job) {
+        long minutes = Long.getLong(property, defaultMinutes);
+        if (minutes <= 0) return;
+        scheduler.schedule(name, initialDelay, Duration.ofMinutes(minutes), job);
+    }
+
+    // Stamps loans that have gone past their due date; the partial index on active loans' due_date keeps
+    // this to the handful of open loans rather than the whole history.
+    static int markOverdueLoans() throws SQLException {
+        try (Connection conn = DatabaseUtil.getConnection();
+             Statement st = conn.createStatement()) {
+            int marked = st.executeUpdate(
+                    "UPDATE loans SET overdue_at = now() " +
+                    "WHERE returned_at IS NULL AND due_date < CURRENT_DATE AND overdue_at IS NULL");
+            if (marked > 0) LOGGER.info("Marked " + marked + " loan(s) overdue");
+            return marked;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.tuvarna.bg.library.service;
+
+import com.tuvarna.bg.library.entity.GenreEntity;
+import com.tuvarna.bg.library.entity.PublisherEntity;
+import com.tuvarna.bg.library.entity.RoleEntity;
+import com.tuvarna.bg.library.util.ChangeNotifications;
+import com.tuvarna.bg.library.util.DatabaseUtil;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * App-wide cache of the small lookup lists behind the combo boxes: genres, publishers, roles and the
+ * distinct book languages.
+ * <p>
+ * Each list is an immutable snapshot behind an {@link AtomicReference}: readers never lock, a miss loads
+ * the whole list once, and writers replace it wholesale. Code that writes one of the underlying tables
+ * calls the matching {@code invalidate...} method; a load that raced with an invalidation is returned to
+ * its caller but never installed, so a stale list can't outlive the write that made it stale. Genre and
+ * book changes made by other instances arrive through {@link ChangeNotifications}.
+ * The returned lists are shared: treat the entities in them as read-only.
+ */
+public final class ReferenceDataCache {
+
+    private static final ReferenceDataCache INSTANCE = new ReferenceDataCache();
+
+    public static ReferenceDataCache getInstance() {
+        return INSTANCE;
+    }
+
+    @FunctionalInterface
+    private interface Loader<T> {
+        List<T> load(Connection conn) throws SQLException;
+    }
+
+    private static final class Slot<T> {
+        // A fresh Snapshot per invalidation, so a loader's compareAndSet fails if one happened meanwhile
+        private static final class Snapshot<T> {
+            final List<T> items; // null = not loaded
+            Snapshot(List<T> items) { this.items = items; }
+        }
+
+        private final Loader<T> loader;
+        private final AtomicReference<Snapshot<T>> ref = new AtomicReference<>(new Snapshot<>(null));
+
+        Slot(Loader<T> loader) {
+            this.loader = loader;
+        }
+
+        List<T> get() throws SQLException {
+            Snapshot<T> current = ref.get();
+            if (current.items != null) return current.items;
+
+            List<T> loaded;
+            try (Connection conn = DatabaseUtil.getConnection()) {
+                loaded = List.copyOf(loader.load(conn));
+            }
+            ref.compareAndSet(current, new Snapshot<>(loaded));
+            return loaded;
+        }
+
+        void invalidate() {
+            ref.set(new Snapshot<>(null));
+        }
+    }
+
+    private final Slot<GenreEntity> genres = new Slot<>(ReferenceDataCache::loadGenres);
+    private final Slot<PublisherEntity> publishers = new Slot<>(ReferenceDataCache::loadPublishers);
+    private final Slot<RoleEntity> roles = new Slot<>(ReferenceDataCache::loadRoles);
+    private final Slot<String> languages = new Slot<>(ReferenceDataCache::loadLanguages);
+
+    private ReferenceDataCache() {
+        // writes from other terminals
+        ChangeNotifications.subscribe(new ChangeNotifications.Listener() {
+            @Override public void onChanges(List<ChangeNotifications.ChangeEvent> events) {
+                for (ChangeNotifications.ChangeEvent e : events) {
+                    if (e.table == ChangeNotifications.Table.GENRES) invalidateGenres();
+                    else if (e.table == ChangeNotifications.Table.BOOKS) invalidateLanguages();
+                }
+            }
+
+            @Override public void onResync() { invalidateAll(); }
+        });
+    }
+
+    /** All genres by name. */
+    public List<GenreEntity> genres() throws SQLException { return genres.get(); }
+
+    /** All publishers by name. */
+    public List<PublisherEntity> publishers() throws SQLException { return publishers.get(); }
+
+    /** All roles by name. */
+    public List<RoleEntity> roles() throws SQLException { return roles.get(); }
+
+    /** Distinct book languages, case-insensitively deduplicated and trimmed, in order. */
+    public List<String> languages() throws SQLException { return languages.get(); }
+
+    public void invalidateGenres() { genres.invalidate(); }
+    public void invalidatePublishers() { publishers.invalidate(); }
+    public void invalidateRoles() { roles.invalidate(); }
+    /** Call after inserting, editing or deleting books. */
+    public void invalidateLanguages() { languages.invalidate(); }
+
+    public void invalidateAll() {
+        invalidateGenres();
+        invalidatePublishers();
+        invalidateRoles();
+        invalidateLanguages();
+    }
+
+    /* ------------------------- loaders ------------------------- */
+    private static List<GenreEntity> loadGenres(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT genres_id, gen_name, genre_desc FROM genres ORDER BY gen_name")) {
+            List<GenreEntity> genres = new ArrayList<>();
+            while (rs.next()) {
+                GenreEntity g = new GenreEntity();
+                g.setGenresId(rs.getInt("genres_id"));
+                g.setGenreName(rs.getString("gen_name"));
+                g.setGenreDescription(rs.getString("genre_desc"));
+                genres.add(g);
+            }
+            return genres;
+        }
+    }
+
+    private static List<PublisherEntity> loadPublishers(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT publishers_id, pub_name, established_on FROM publishers ORDER BY pub_name")) {
+            List<PublisherEntity> publishers = new ArrayList<>();
+            while (rs.next()) {
+                PublisherEntity p = new PublisherEntity();
+                p.setPublishersId(rs.getInt("publishers_id"));
+                p.setPubName(rs.getString("pub_name"));
+                Date est = rs.getDate("established_on");
+                p.setEstablishedOn(est != null ? est.toLocalDate() : null);
+                publishers.add(p);
+            }
+            return publishers;
+        }
+    }
+
+    private static List<RoleEntity> loadRoles(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT roles_id, name FROM roles ORDER BY name")) {
+            List<RoleEntity> roles = new ArrayList<>();
+            while (rs.next()) {
+                RoleEntity r = new RoleEntity();
+                r.setRolesId(rs.getInt("roles_id"));
+                r.setName(rs.getString("name"));
+                roles.add(r);
+            }
+            return roles;
+        }
+    }
+
+    private static List<String> loadLanguages(Connection conn) throws SQLException {
+        String sql = "SELECT MIN(TRIM(language)) AS lang " +
+                "FROM books " +
+                "WHERE language IS NOT NULL AND TRIM(language) <> '' " +
+                "GROUP BY LOWER(TRIM(language)) " +          // case-insensitive distinct
+                "ORDER BY MIN(TRIM(language)) ASC";
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            List<String> langs = new ArrayList<>();
+            while (rs.next()) {
+                String lang = rs.getString("lang");
+                if (lang != null && !lang.isBlank()) langs.add(lang.trim());
+            }
+            return langs;
+        }
+    }
+}
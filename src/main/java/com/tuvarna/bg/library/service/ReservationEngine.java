@@ -0,0 +1,297 @@
+package com.tuvarna.bg.library.service;
+
+import com.tuvarna.bg.library.util.Transactions;
+
+import java.sql.*;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Per-book FIFO reservation queue.
+ * <p>
+ * A reservation waits as PENDING until a copy of its book frees up; the head of the queue then becomes
+ * READY, holds that copy ({@code copy_id}, copy status RESERVED) and has until {@code expires_at} to pick
+ * it up. Cancelled and expired holds pass their copy on to the next in line, and the copy only goes back
+ * to AVAILABLE when nobody is waiting.
+ * <p>
+ * Every change to a book's queue runs under a transaction-scoped advisory lock on that book, taken in
+ * ascending book order, so the queue order is strict and concurrent desks never deadlock on it. The
+ * queue head and expiring holds are found through the partial indexes from migration V6.
+ */
+public class ReservationEngine {
+
+    // Advisory lock class for reservation queues; the second key is the book id
+    private static final int LOCK_CLASS = 0x5253; // "RS"
+    private static final int HOLD_DAYS = Integer.getInteger("library.reservations.holdDays", 3);
+    private static final int EXPIRY_BATCH = 500;
+
+    // Hand a freed copy to the head of its book's queue (copy -> RESERVED), or shelve it (AVAILABLE)
+    private static final String SHELVE_COPY_SQL =
+            "WITH copy AS (" +
+            "    SELECT copies_id, books_id FROM book_copies WHERE copies_id = ?), " +
+            "head AS (" +
+            "    SELECT r.reservations_id FROM reservations r JOIN copy c ON c.books_id = r.book_id " +
+            "    WHERE r.status = 'PENDING' " +
+            "    ORDER BY r.created_at, r.reservations_id LIMIT 1 " +
+            "    FOR UPDATE OF r), " +
+            "promoted AS (" +
+            "    UPDATE reservations SET status = 'READY', expires_at = now() + make_interval(days => ?), " +
+            "                            copy_id = (SELECT copies_id FROM copy) " +
+            "    WHERE reservations_id IN (SELECT reservations_id FROM head) " +
+            "    RETURNING reservations_id) " +
+            "UPDATE book_copies SET status = CASE WHEN EXISTS (SELECT 1 FROM promoted) THEN 'RESERVED' ELSE 'AVAILABLE' END " +
+            "WHERE copies_id = (SELECT copies_id FROM copy)";
+
+    // Pair the queue head with an AVAILABLE copy of the book, if both exist; 1 row = one hold placed
+    private static final String FILL_HOLD_SQL =
+            "WITH head AS (" +
+            "    SELECT reservations_id FROM reservations " +
+            "    WHERE book_id = ? AND status = 'PENDING' " +
+            "    ORDER BY created_at, reservations_id LIMIT 1), " +
+            "free AS (" +
+            "    SELECT copies_id FROM book_copies " +
+            "    WHERE books_id = ? AND status = 'AVAILABLE' AND EXISTS (SELECT 1 FROM head) " +
+            "    ORDER BY copies_id LIMIT 1 " +
+            "    FOR UPDATE SKIP LOCKED), " +
+            "held AS (" +
+            "    UPDATE book_copies bc SET status = 'RESERVED' FROM free " +
+            "    WHERE bc.copies_id = free.copies_id " +
+            "    RETURNING bc.copies_id) " +
+            "UPDATE reservations r SET status = 'READY', expires_at = now() + make_interval(days => ?), " +
+            "                          copy_id = held.copies_id " +
+            "FROM held, head WHERE r.reservations_id = head.reservations_id";
+
+    // Pick-up: complete the READY reservation and lend its held copy in one statement
+    private static final String FULFIL_SQL =
+            "WITH done AS (" +
+            "    UPDATE reservations SET status = 'COMPLETED' " +
+            "    WHERE reservations_id = ? AND status = 'READY' AND copy_id IS NOT NULL " +
+            "    RETURNING user_id, copy_id), " +
+            "claimed AS (" +
+            "    UPDATE book_copies bc SET status = 'LOANED' FROM done " +
+            "    WHERE bc.copies_id = done.copy_id AND bc.status = 'RESERVED' " +
+            "    RETURNING bc.copies_id, done.user_id) " +
+            "INSERT INTO loans (users_id, staff_id, copy_id, due_date) " +
+            "SELECT user_id, ?, copies_id, ? FROM claimed " +
+            "RETURNING loans_id, copy_id";
+
+    /** Result of {@link #reserve}: the new reservation's status and, while PENDING, its place in the queue. */
+    public static final class Queued {
+        public final String status;
+        public final int position; // 1 = next in line; 0 when READY
+
+        Queued(String status, int position) {
+            this.status = status;
+            this.position = position;
+        }
+    }
+
+    /**
+     * Queues {@code userId} for {@code bookId}. If a copy is on the shelf and nobody is ahead in the
+     * queue, it is held for the new reservation straight away.
+     *
+     * @return the reservation's status after queueing (PENDING or READY) and its queue position
+     */
+    public Queued reserve(int userId, int bookId) throws SQLException {
+        return Transactions.run(conn -> {
+            lockBooks(conn, List.of(bookId));
+            int reservationId;
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "INSERT INTO reservations (user_id, book_id, status) VALUES (?, ?, 'PENDING') RETURNING reservations_id")) {
+                ps.setInt(1, userId);
+                ps.setInt(2, bookId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    rs.next();
+                    reservationId = rs.getInt(1);
+                }
+            }
+            fillHolds(conn, bookId);
+            String status = statusOf(conn, reservationId);
+            return new Queued(status, "PENDING".equals(status) ? queuePosition(conn, reservationId) : 0);
+        });
+    }
+
+    /** Cancels a PENDING or READY reservation; a held copy goes to the next in line. */
+    public boolean cancel(int reservationId) throws SQLException {
+        return Transactions.run(conn -> {
+            Integer bookId = bookOf(conn, reservationId);
+            if (bookId == null) return false;
+            lockBooks(conn, List.of(bookId));
+
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "UPDATE reservations SET status = 'CANCELLED' " +
+                    "WHERE reservations_id = ? AND status IN ('PENDING', 'READY') " +
+                    "RETURNING copy_id")) {
+                ps.setInt(1, reservationId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) return false;
+                    int copyId = rs.getInt("copy_id");
+                    if (!rs.wasNull()) shelve(conn, List.of(copyId));
+                }
+            }
+            return true;
+        });
+    }
+
+    /**
+     * The patron picked up their hold: completes the READY reservation and lends them the held copy.
+     *
+     * @throws LoanService.CopyUnavailableException if the reservation is no longer READY with a held copy
+     */
+    public LoanService.Checkout fulfil(int reservationId, Integer staffId, LocalDate dueDate) throws SQLException {
+        return Transactions.run(conn -> {
+            Integer bookId = bookOf(conn, reservationId);
+            if (bookId == null) throw new LoanService.CopyUnavailableException("Reservation #" + reservationId + " no longer exists");
+            lockBooks(conn, List.of(bookId));
+
+            try (PreparedStatement ps = conn.prepareStatement(FULFIL_SQL)) {
+                ps.setInt(1, reservationId);
+                if (staffId != null) ps.setInt(2, staffId); else ps.setNull(2, Types.INTEGER);
+                ps.setDate(3, Date.valueOf(dueDate));
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) {
+                        throw new LoanService.CopyUnavailableException("Reservation #" + reservationId + " is not ready for pick-up");
+                    }
+                    return new LoanService.Checkout(rs.getInt("loans_id"), rs.getInt("copy_id"));
+                }
+            }
+        });
+    }
+
+    /**
+     * Expires READY holds whose pick-up window has passed and passes each held copy to the next
+     * reservation for its book. Works through the backlog in batches; returns how many holds expired.
+     */
+    public int expireStale() throws SQLException {
+        int total = 0;
+        while (true) {
+            int[] batch = Transactions.run(ReservationEngine::expireBatch);
+            total += batch[1];
+            if (batch[0] < EXPIRY_BATCH) return total;
+        }
+    }
+
+    // One batch of overdue holds; returns {holds found, holds expired}
+    private static int[] expireBatch(Connection conn) throws SQLException {
+        Map<Integer, Integer> bookByReservation = new HashMap<>();
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT reservations_id, book_id FROM reservations " +
+                "WHERE status = 'READY' AND expires_at < now() " +
+                "ORDER BY expires_at LIMIT ?")) {
+            ps.setInt(1, EXPIRY_BATCH);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) bookByReservation.put(rs.getInt(1), rs.getInt(2));
+            }
+        }
+        if (bookByReservation.isEmpty()) return new int[]{0, 0};
+        lockBooks(conn, bookByReservation.values());
+
+        // re-checked under the locks: a hold picked up or cancelled meanwhile is left alone
+        List<Integer> freed = new ArrayList<>();
+        int expired = 0;
+        try (PreparedStatement ps = conn.prepareStatement(
+                "UPDATE reservations SET status = 'EXPIRED' " +
+                "WHERE reservations_id = ANY(?) AND status = 'READY' AND expires_at < now() " +
+                "RETURNING copy_id")) {
+            ps.setArray(1, conn.createArrayOf("integer", bookByReservation.keySet().toArray()));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    expired++;
+                    int copyId = rs.getInt(1);
+                    if (!rs.wasNull()) freed.add(copyId);
+                }
+            }
+        }
+        shelve(conn, freed);
+        return new int[]{bookByReservation.size(), expired};
+    }
+
+    /**
+     * Shelves freed copies inside the caller's transaction: each goes to the head of its book's queue or
+     * back to AVAILABLE. Used for check-in, cancellations and expiries. Returns how many were put on hold.
+     */
+    static int shelve(Connection conn, Collection<Integer> copyIds) throws SQLException {
+        if (copyIds.isEmpty()) return 0;
+        Array ids = conn.createArrayOf("integer", copyIds.toArray());
+
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT pg_advisory_xact_lock(?, books_id) " +
+                "FROM (SELECT DISTINCT books_id FROM book_copies WHERE copies_id = ANY(?) ORDER BY books_id) b")) {
+            ps.setInt(1, LOCK_CLASS);
+            ps.setArray(2, ids);
+            ps.executeQuery().close();
+        }
+
+        // each statement sees the ones before it, so returning three copies of a title promotes three holds
+        try (PreparedStatement ps = conn.prepareStatement(SHELVE_COPY_SQL)) {
+            for (int id : copyIds) {
+                ps.setInt(1, id);
+                ps.setInt(2, HOLD_DAYS);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT COUNT(*) FROM book_copies WHERE copies_id = ANY(?) AND status = 'RESERVED'")) {
+            ps.setArray(1, ids);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    // Holds shelf copies for waiting reservations until either runs out (e.g. after copies were added)
+    static int fillHolds(Connection conn, int bookId) throws SQLException {
+        int placed = 0;
+        try (PreparedStatement ps = conn.prepareStatement(FILL_HOLD_SQL)) {
+            ps.setInt(1, bookId);
+            ps.setInt(2, bookId);
+            ps.setInt(3, HOLD_DAYS);
+            while (ps.executeUpdate() > 0) placed++;
+        }
+        return placed;
+    }
+
+    private static void lockBooks(Connection conn, Collection<Integer> bookIds) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT pg_advisory_xact_lock(?, ?)")) {
+            for (int bookId : new TreeSet<>(bookIds)) {
+                ps.setInt(1, LOCK_CLASS);
+                ps.setInt(2, bookId);
+                ps.executeQuery().close();
+            }
+        }
+    }
+
+    private static Integer bookOf(Connection conn, int reservationId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT book_id FROM reservations WHERE reservations_id = ?")) {
+            ps.setInt(1, reservationId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : null;
+            }
+        }
+    }
+
+    // 1-based place of a PENDING reservation in its book's queue; exact while the book's lock is held
+    private static int queuePosition(Connection conn, int reservationId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT COUNT(*) FROM reservations r, reservations me " +
+                "WHERE me.reservations_id = ? AND r.book_id = me.book_id AND r.status = 'PENDING' " +
+                "AND (r.created_at, r.reservations_id) <= (me.created_at, me.reservations_id)")) {
+            ps.setInt(1, reservationId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    private static String statusOf(Connection conn, int reservationId) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT status FROM reservations WHERE reservations_id = ?")) {
+            ps.setInt(1, reservationId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.tuvarna.bg.library.service;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Produces the fixed-size JPEG thumbnails the UI actually renders.
+ * <p>
+ * For a cover stored at {@code dir/name.ext} the thumbnails are written next to it as
+ * {@code dir/name_w140.jpg} (grid cards) and {@code dir/name_w240.jpg} (details panel / popup),
+ * so the grid never has to decode the multi-megabyte original.
+ * <p>
+ * Existing covers can be backfilled with:
+ * <pre>java -cp ... com.tuvarna.bg.library.service.ThumbnailGenerator [library_images]</pre>
+ */
+public final class ThumbnailGenerator {
+    private static final Logger LOGGER = Logger.getLogger(ThumbnailGenerator.class.getName());
+
+    public static final int GRID_WIDTH = 140;
+    public static final int DETAIL_WIDTH = 240;
+    public static final List<Integer> WIDTHS = List.of(GRID_WIDTH, DETAIL_WIDTH);
+
+    private static final String SUFFIX = "_w";
+    private static final List<String> SOURCE_EXTENSIONS = List.of("jpg", "jpeg", "png", "gif", "bmp");
+
+    private ThumbnailGenerator() { }
+
+    /** Where the {@code width}px thumbnail of {@code original} lives (whether or not it exists yet). */
+    public static Path thumbnailPath(Path original, int width) {
+        String name = original.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        return original.resolveSibling(base + SUFFIX + width + ".jpg");
+    }
+
+    /** Smallest pre-generated width that is at least {@code requested}, or -1 if the original must be used. */
+    public static int thumbnailWidthFor(double requested) {
+        for (int w : WIDTHS) {
+            if (requested <= w) return w;
+        }
+        return -1;
+    }
+
+    /** Writes all thumbnail sizes for {@code original}; existing thumbnails are overwritten. */
+    public static void generate(Path original) throws IOException {
+        BufferedImage source = ImageIO.read(original.toFile());
+        if (source == null) throw new IOException("Unsupported image format: " + original);
+
+        for (int width : WIDTHS) {
+            BufferedImage thumb = scaleToWidth(source, width);
+            Path target = thumbnailPath(original, width);
+            Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+            if (!ImageIO.write(thumb, "jpg", tmp.toFile())) {
+                Files.deleteIfExists(tmp);
+                throw new IOException("No JPEG writer available");
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /** Generates missing thumbnails for every cover under {@code root}; returns how many covers were processed. */
+    public static int backfill(Path root) throws IOException {
+        if (!Files.isDirectory(root)) return 0;
+
+        List<Path> originals;
+        try (Stream<Path> files = Files.walk(root)) {
+            originals = files.filter(Files::isRegularFile).filter(ThumbnailGenerator::isOriginal).toList();
+        }
+
+        int generated = 0;
+        for (Path original : originals) {
+            boolean missing = WIDTHS.stream().anyMatch(w -> !Files.exists(thumbnailPath(original, w)));
+            if (!missing) continue;
+            try {
+                generate(original);
+                generated++;
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Skipping " + original + ": " + e.getMessage());
+            }
+        }
+        return generated;
+    }
+
+    static boolean isOriginal(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        int dot = name.lastIndexOf('.');
+        if (dot < 0 || !SOURCE_EXTENSIONS.contains(name.substring(dot + 1))) return false;
+        String base = name.substring(0, dot);
+        for (int w : WIDTHS) {
+            if (base.endsWith(SUFFIX + w)) return false;
+        }
+        return true;
+    }
+
+    // Halves the image step by step down to the target width. A single bicubic pass from a 3000px scan
+    // to 140px looks aliased; the stepwise version stays sharp and is still cheap.
+    private static BufferedImage scaleToWidth(BufferedImage src, int targetWidth) {
+        BufferedImage current = flatten(src);
+        if (current.getWidth() <= targetWidth) return current; // never upscale
+
+        int targetHeight = Math.max(1, Math.round(current.getHeight() * (targetWidth / (float) current.getWidth())));
+        int w = current.getWidth();
+        int h = current.getHeight();
+        do {
+            w = Math.max(targetWidth, w / 2);
+            h = Math.max(targetHeight, h / 2);
+            BufferedImage step = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = step.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(current, 0, 0, w, h, null);
+            g.dispose();
+            current = step;
+        } while (w > targetWidth);
+        return current;
+    }
+
+    // JPEG has no alpha channel: paint transparent PNG/GIF covers onto white
+    private static BufferedImage flatten(BufferedImage src) {
+        if (src.getType() == BufferedImage.TYPE_INT_RGB) return src;
+        BufferedImage rgb = new BufferedImage(src.getWidth(), src.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = rgb.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, src.getWidth(), src.getHeight());
+        g.drawImage(src, 0, 0, null);
+        g.dispose();
+        return rgb;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path root = Paths.get(args.length > 0 ? args[0] : "library_images");
+        long start = System.nanoTime();
+        int n = backfill(root);
+        System.out.printf("Generated thumbnails for %d cover(s) under %s in %d ms%n",
+                n, root.toAbsolutePath(), (System.nanoTime() - start) / 1_000_000);
+    }
+}
@@ -0,0 +1,223 @@
+package com.tuvarna.bg.library.ui;
+
+import com.tuvarna.bg.library.util.BackgroundTasks;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.geometry.Orientation;
+import javafx.scene.Node;
+import javafx.scene.control.ScrollBar;
+import javafx.scene.control.TableView;
+
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Feeds a {@link TableView} page by page as the user scrolls.
+ * <p>
+ * Pages are fetched with keyset (seek) pagination: the query gets the last row of the previous page
+ * and continues past it in the query's own sort order ({@code WHERE (sort_col, id) < (?, ?) ... LIMIT n} for
+ * the newest-first loan and reservation tables, {@code >} for ascending ones), so every page costs the
+ * same no matter how deep the user scrolls, and only the rows the user has scrolled to are held in memory.
+ * The next page is requested when the vertical scroll bar nears the bottom, or straight away while the
+ * loaded rows can't fill the table's height yet. FX thread only.
+ */
+public class KeysetPager<T> {
+    private static final Logger LOGGER = Logger.getLogger(KeysetPager.class.getName());
+
+    public static final int DEFAULT_PAGE_SIZE = Integer.getInteger("library.paging.pageSize", 100);
+    private static final double PREFETCH_AT = 0.85; // fraction of the scroll range
+    private static final double ROW_HEIGHT_ESTIMATE = 24;
+
+    /** Returns up to {@code limit} rows that sort after {@code after} (null = first page). Runs off the FX thread. */
+    @FunctionalInterface
+    public interface PageQuery<T> {
+        List<T> fetch(T after, int limit) throws Exception;
+    }
+
+    /** Loads the rows with the given ids, for {@link #rowsChanged}. Runs off the FX thread. */
+    @FunctionalInterface
+    public interface RowQuery<T> {
+        List<T> fetch(Collection<Integer> ids) throws Exception;
+    }
+
+    private final TableView<T> table;
+    private final BackgroundTasks background;
+    private final String key;
+    private final int pageSize;
+    private final PageQuery<T> query;
+    private final ObservableList<T> rows = FXCollections.observableArrayList();
+
+    private Consumer<Throwable> onError = e -> LOGGER.log(Level.WARNING, "Page load failed", e);
+    private ScrollBar scrollBar;
+    private T cursor;          // last row of the last page; kept apart from rows since the table may re-sort them
+    private boolean active;
+    private boolean loading;
+    private boolean exhausted;
+    private int generation;    // bumped on reload/suspend so late pages from an older run are dropped
+
+    private ToIntFunction<? super T> idOf;
+    private RowQuery<T> rowQuery;
+    private final Set<Integer> pendingInserted = new HashSet<>();
+    private final Set<Integer> pendingUpdated = new HashSet<>();
+    private final Set<Integer> pendingDeleted = new HashSet<>();
+    private boolean patching;  // a patch fetch is in flight
+
+    public KeysetPager(TableView<T> table, BackgroundTasks background, String key, PageQuery<T> query) {
+        this(table, background, key, DEFAULT_PAGE_SIZE, query);
+    }
+
+    public KeysetPager(TableView<T> table, BackgroundTasks background, String key, int pageSize, PageQuery<T> query) {
+        this.table = table;
+        this.background = background;
+        this.key = key;
+        this.pageSize = pageSize;
+        this.query = query;
+
+        table.skinProperty().addListener((obs, ov, nv) -> {
+            if (nv != null) Platform.runLater(this::attachScrollBar);
+        });
+        if (table.getSkin() != null) attachScrollBar();
+        table.heightProperty().addListener((obs, ov, nv) -> fillViewport());
+    }
+
+    public void setOnError(Consumer<Throwable> onError) { this.onError = onError; }
+
+    /** Enables {@link #rowsChanged}: how rows are identified and how to load rows by id. */
+    public void setRowLookup(ToIntFunction<? super T> idOf, RowQuery<T> rowQuery) {
+        this.idOf = idOf;
+        this.rowQuery = rowQuery;
+    }
+
+    /** Drops everything loaded so far and starts again from the first page. */
+    public void reload() {
+        generation++;
+        active = true;
+        loading = false;
+        exhausted = false;
+        cursor = null;
+        clearPendingPatch();
+        rows.clear();
+        if (table.getItems() != rows) table.setItems(rows);
+        if (scrollBar != null) scrollBar.setValue(scrollBar.getMin());
+        loadMore();
+    }
+
+    /** Stops paging, e.g. while the table shows search results instead; {@link #reload} resumes. */
+    public void suspend() {
+        generation++;
+        active = false;
+        loading = false;
+    }
+
+    /**
+     * Patches the loaded rows in place instead of reloading, keeping the scroll position: inserted and
+     * updated rows are re-read by id and replaced, or added at the top if new (pages are newest first);
+     * deleted ones are dropped. Rows not loaded yet are left to paging. Changes that arrive while a patch is
+     * being fetched go into the next one. Needs {@link #setRowLookup}.
+     */
+    public void rowsChanged(Collection<Integer> inserted, Collection<Integer> updated, Collection<Integer> deleted) {
+        if (rowQuery == null || !active) return;
+        pendingInserted.addAll(inserted);
+        pendingUpdated.addAll(updated);
+        pendingDeleted.addAll(deleted);
+        flushPatch();
+    }
+
+    private void flushPatch() {
+        if (patching || (pendingInserted.isEmpty() && pendingUpdated.isEmpty() && pendingDeleted.isEmpty())) return;
+        if (!active || (loading && cursor == null)) {
+            // the first page is still on its way and will be current
+            clearPendingPatch();
+            return;
+        }
+        Set<Integer> inserted = new HashSet<>(pendingInserted);
+        Set<Integer> deleted = new HashSet<>(pendingDeleted);
+        Set<Integer> fetch = new HashSet<>(pendingInserted);
+        fetch.addAll(pendingUpdated);
+        fetch.removeAll(deleted);
+        clearPendingPatch();
+
+        patching = true;
+        int gen = generation;
+        background.submit(key + "-patch", () -> fetch.isEmpty() ? List.<T>of() : rowQuery.fetch(fetch), fresh -> {
+            patching = false;
+            if (gen == generation) applyPatch(fresh, inserted, deleted);
+            flushPatch();
+        }, e -> {
+            patching = false;
+            onError.accept(e);
+        });
+    }
+
+    private void applyPatch(List<T> fresh, Set<Integer> inserted, Set<Integer> deleted) {
+        Map<Integer, T> byId = new HashMap<>();
+        for (T row : fresh) byId.put(idOf.applyAsInt(row), row);
+
+        for (ListIterator<T> it = rows.listIterator(); it.hasNext(); ) {
+            int id = idOf.applyAsInt(it.next());
+            if (deleted.contains(id)) it.remove();
+            else {
+                T row = byId.remove(id);
+                if (row != null) it.set(row);
+            }
+        }
+        List<T> added = new ArrayList<>();
+        for (Map.Entry<Integer, T> e : byId.entrySet()) {
+            if (inserted.contains(e.getKey())) added.add(e.getValue());
+        }
+        if (!added.isEmpty()) rows.addAll(0, added);
+    }
+
+    private void clearPendingPatch() {
+        pendingInserted.clear();
+        pendingUpdated.clear();
+        pendingDeleted.clear();
+    }
+
+    private void loadMore() {
+        if (!active || loading || exhausted) return;
+        loading = true;
+        int gen = generation;
+        T after = cursor;
+
+        background.submit(key, () -> query.fetch(after, pageSize), page -> {
+            if (gen != generation) return;
+            loading = false;
+            if (!page.isEmpty()) cursor = page.get(page.size() - 1);
+            if (page.size() < pageSize) exhausted = true;
+            rows.addAll(page);
+            fillViewport();
+        }, e -> {
+            if (gen != generation) return;
+            loading = false;
+            onError.accept(e);
+        });
+    }
+
+    private void attachScrollBar() {
+        for (Node n : table.lookupAll(".scroll-bar")) {
+            if (n instanceof ScrollBar sb && sb.getOrientation() == Orientation.VERTICAL) {
+                if (sb == scrollBar) return;
+                scrollBar = sb;
+                sb.valueProperty().addListener((obs, ov, nv) -> {
+                    double range = sb.getMax() - sb.getMin();
+                    if (range > 0 && (nv.doubleValue() - sb.getMin()) / range >= PREFETCH_AT) loadMore();
+                });
+                return;
+            }
+        }
+    }
+
+    // Without enough rows to scroll there is no scroll event to trigger the next page. A table that
+    // hasn't been laid out yet (height 0, e.g. on a hidden tab) loads nothing beyond the first page.
+    private void fillViewport() {
+        if (scrollBar == null) attachScrollBar();
+        double rowHeight = table.getFixedCellSize() > 0 ? table.getFixedCellSize() : ROW_HEIGHT_ESTIMATE;
+        int visibleRows = (int) Math.ceil(table.getHeight() / rowHeight);
+        if (rows.size() < visibleRows) loadMore();
+    }
+}
@@ -0,0 +1,123 @@
+package com.tuvarna.bg.library.ui;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import javafx.geometry.Pos;
+import javafx.scene.Node;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.layout.HBox;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Grid of cards backed by a {@link ListView} whose rows are slices of the source list.
+ * <p>
+ * Only the rows currently in the viewport get cells, and those cells (and their cards) are
+ * recycled while scrolling, so the node count depends on the window size and not on how many
+ * items are in {@link #getSource()}. Rows are re-sliced when the width changes the column count.
+ */
+public final class VirtualGridView<T> extends ListView<List<T>> {
+
+    /** A reusable card node; {@link #update} is called with a new item every time the card is recycled. */
+    public interface Card<T> {
+        Node getNode();
+        void update(T item);
+    }
+
+    private final ObservableList<T> source = FXCollections.observableArrayList();
+    private Supplier<? extends Card<T>> cardFactory;
+
+    private double cardWidth = 180;
+    private double hgap = 20;
+    private int minColumns = 1;
+    private int maxColumns = Integer.MAX_VALUE;
+    private int columns = -1;
+
+    public VirtualGridView() {
+        getStyleClass().add("virtual-grid");
+        setFocusTraversable(false);
+        setCellFactory(lv -> new RowCell());
+        source.addListener((ListChangeListener<T>) c -> reflow(true));
+        widthProperty().addListener((obs, ov, nv) -> reflow(false));
+    }
+
+    public ObservableList<T> getSource() { return source; }
+
+    public void setSource(Collection<? extends T> items) { source.setAll(items); }
+
+    public void setCardFactory(Supplier<? extends Card<T>> cardFactory) {
+        this.cardFactory = cardFactory;
+        refresh();
+    }
+
+    /** Card footprint used for the column math; {@code cardHeight} also fixes the row height. */
+    public void setCardSize(double cardWidth, double cardHeight, double hgap, double vgap) {
+        this.cardWidth = cardWidth;
+        this.hgap = hgap;
+        setFixedCellSize(cardHeight + vgap);
+        reflow(true);
+    }
+
+    public void setColumnRange(int min, int max) {
+        this.minColumns = Math.max(1, min);
+        this.maxColumns = Math.max(this.minColumns, max);
+        reflow(true);
+    }
+
+    private void reflow(boolean force) {
+        double pad = 32; // list padding + vertical scrollbar
+        double available = Math.max(getWidth() - pad, 600); // fallback if width not yet measured
+        int cols = (int) Math.floor((available + hgap) / (cardWidth + hgap));
+        cols = Math.max(minColumns, Math.min(maxColumns, cols));
+        if (!force && cols == columns) return;
+        columns = cols;
+
+        int n = source.size();
+        List<List<T>> rows = new ArrayList<>((n + cols - 1) / cols);
+        for (int i = 0; i < n; i += cols) {
+            rows.add(List.copyOf(source.subList(i, Math.min(n, i + cols))));
+        }
+        getItems().setAll(rows);
+    }
+
+    private final class RowCell extends ListCell<List<T>> {
+        private final HBox box = new HBox();
+        private final List<Card<T>> cards = new ArrayList<>();
+
+        RowCell() {
+            box.setAlignment(Pos.TOP_LEFT);
+            getStyleClass().add("virtual-grid-row");
+        }
+
+        @Override
+        protected void updateItem(List<T> row, boolean empty) {
+            super.updateItem(row, empty);
+            setText(null);
+            if (empty || row == null || cardFactory == null) {
+                for (Card<T> card : cards) card.update(null);
+                setGraphic(null);
+                return;
+            }
+
+            box.setSpacing(hgap);
+            while (cards.size() < row.size()) {
+                Card<T> card = cardFactory.get();
+                cards.add(card);
+                box.getChildren().add(card.getNode());
+            }
+            for (int i = 0; i < cards.size(); i++) {
+                Card<T> card = cards.get(i);
+                boolean used = i < row.size();
+                card.update(used ? row.get(i) : null);
+                card.getNode().setVisible(used);
+                card.getNode().setManaged(used);
+            }
+            setGraphic(box);
+        }
+    }
+}
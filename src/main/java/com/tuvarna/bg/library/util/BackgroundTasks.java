@@ -0,0 +1,143 @@
+package com.tuvarna.bg.library.util;
+
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+import javafx.concurrent.Worker;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs blocking work (JDBC, file I/O) off the JavaFX Application Thread.
+ * <p>
+ * Every controller owns one instance. Reads are submitted under a key; submitting again under the same
+ * key cancels the previous task, and only the latest task for a key ever delivers its result. That is
+ * only safe for work that can be thrown away, so writes go through {@link #submitWrite} instead.
+ * Cancelling never interrupts the worker: on a virtual thread an interrupt during a socket read closes
+ * the socket, which would cost the pool a physical connection. A superseded task just runs out and its
+ * result is dropped, or, if it was submitted with {@link #submitCancellable}, has its statement
+ * cancelled on the server through its {@link CancelToken}.
+ * Callbacks always run on the FX thread.
+ */
+public class BackgroundTasks {
+    private static final Logger LOGGER = Logger.getLogger(BackgroundTasks.class.getName());
+
+    private static final ExecutorService EXECUTOR =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("library-bg-", 0).factory());
+
+    // Only touched from the FX thread
+    private final Map<String, Task<?>> inFlight = new HashMap<>();
+
+    /**
+     * Submits {@code work} under {@code key}, cancelling any task still running for the same key.
+     * Must be called from the FX thread.
+     */
+    public <T> Task<T> submit(String key, Callable<T> work, Consumer<T> onSuccess, Consumer<Throwable> onError) {
+        Task<T> task = new Task<>() {
+            @Override protected T call() throws Exception {
+                return work.call();
+            }
+        };
+
+        Task<?> previous = inFlight.put(key, task);
+        if (previous != null) previous.cancel(false);
+
+        task.setOnSucceeded(e -> {
+            if (inFlight.get(key) != task) return; // superseded
+            inFlight.remove(key);
+            if (onSuccess != null) onSuccess.accept(task.getValue());
+        });
+        task.setOnFailed(e -> {
+            if (inFlight.get(key) != task) return;
+            inFlight.remove(key);
+            Throwable ex = task.getException();
+            if (onError != null) onError.accept(ex);
+            else LOGGER.log(Level.WARNING, "Background task '" + key + "' failed", ex);
+        });
+        task.setOnCancelled(e -> inFlight.remove(key, task));
+
+        EXECUTOR.execute(task);
+        return task;
+    }
+
+    public <T> Task<T> submit(String key, Callable<T> work, Consumer<T> onSuccess) {
+        return submit(key, work, onSuccess, null);
+    }
+
+    /**
+     * Runs a write. Nothing supersedes or cancels it, {@link #cancelAll} included: it always runs to the end
+     * and reports its own outcome, so two quick clicks that both commit are both reported.
+     * Must be called from the FX thread.
+     */
+    public <T> Task<T> submitWrite(String name, Callable<T> work, Consumer<T> onSuccess, Consumer<Throwable> onError) {
+        Task<T> task = new Task<>() {
+            @Override protected T call() throws Exception {
+                return work.call();
+            }
+        };
+        task.setOnSucceeded(e -> {
+            if (onSuccess != null) onSuccess.accept(task.getValue());
+        });
+        task.setOnFailed(e -> {
+            Throwable ex = task.getException();
+            if (onError != null) onError.accept(ex);
+            else LOGGER.log(Level.WARNING, "Write '" + name + "' failed", ex);
+        });
+
+        EXECUTOR.execute(task);
+        return task;
+    }
+
+    /** Work that registers its JDBC statement with the token so cancellation reaches the server. */
+    @FunctionalInterface
+    public interface CancellableWork<T> {
+        T call(CancelToken token) throws Exception;
+    }
+
+    /**
+     * Like {@link #submit(String, Callable, Consumer, Consumer)}, but when the task is superseded or
+     * cancelled the statement registered with its {@link CancelToken} is cancelled too.
+     */
+    public <T> Task<T> submitCancellable(String key, CancellableWork<T> work,
+                                         Consumer<T> onSuccess, Consumer<Throwable> onError) {
+        CancelToken token = new CancelToken();
+        Task<T> task = submit(key, () -> work.call(token), onSuccess, onError);
+        task.stateProperty().addListener((obs, ov, nv) -> {
+            if (nv == Worker.State.CANCELLED) token.cancel();
+        });
+        return task;
+    }
+
+    /** Fire-and-forget work with no FX callback (e.g. warm-up, writes whose result nobody waits for). */
+    public static void run(Runnable work) {
+        EXECUTOR.execute(() -> {
+            try {
+                work.run();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Background work failed", e);
+            }
+        });
+    }
+
+    /** Marshals {@code action} onto the FX thread (runs it directly if already there). */
+    public static void onFxThread(Runnable action) {
+        if (Platform.isFxApplicationThread()) action.run();
+        else Platform.runLater(action);
+    }
+
+    /** Cancels every keyed task (reads); writes from {@link #submitWrite} are left to finish. */
+    public void cancelAll() {
+        for (Task<?> t : inFlight.values()) t.cancel(false);
+        inFlight.clear();
+    }
+
+    public static void shutdown() {
+        EXECUTOR.shutdownNow();
+    }
+}
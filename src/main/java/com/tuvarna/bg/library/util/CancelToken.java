@@ -0,0 +1,48 @@
+package com.tuvarna.bg.library.util;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Lets a superseded background query be stopped on the server.
+ * <p>
+ * {@link BackgroundTasks} doesn't interrupt superseded tasks: on a virtual thread, interrupting a JDBC
+ * call blocked in a socket read closes the socket and with it the pooled connection. Instead, code that
+ * runs a cancellable query {@link #register registers} its statement here and BackgroundTasks calls
+ * {@link #cancel} (which uses {@link Statement#cancel}) when the task is replaced or cancelled; the
+ * server aborts the query and the connection stays usable.
+ */
+public final class CancelToken {
+    private static final Logger LOGGER = Logger.getLogger(CancelToken.class.getName());
+
+    /** Token for callers that never cancel. */
+    public static final CancelToken NONE = new CancelToken();
+
+    private volatile boolean cancelled;
+    private volatile Statement statement;
+
+    /** Registers the statement about to be executed; cancels it at once if the token is already cancelled. */
+    public void register(Statement stmt) throws SQLException {
+        if (this == NONE) return;
+        statement = stmt;
+        if (cancelled) stmt.cancel();
+    }
+
+    public void cancel() {
+        if (this == NONE) return;
+        cancelled = true;
+        Statement s = statement;
+        if (s == null) return;
+        try {
+            s.cancel();
+        } catch (SQLException e) {
+            LOGGER.log(Level.FINE, "Statement cancel failed", e);
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
@@ -0,0 +1,168 @@
+package com.tuvarna.bg.library.util;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Tells this process about row changes made by any instance of the app.
+ * <p>
+ * Triggers (migrations V8 and V10) {@code NOTIFY} committed row changes on the {@code library_changes}
+ * channel: books, book authors (author renames included), reservations and genres; copies added or
+ * removed; loans opened, returned, re-dated or deleted. One daemon thread holds a dedicated (unpooled)
+ * connection that {@code LISTEN}s on it and hands each batch of received changes to the subscribers, on
+ * that thread. Our own writes come back too, so subscribers must be
+ * idempotent. If the connection drops, the listener reconnects with backoff and then calls
+ * {@link Listener#onResync()}, since whatever changed in between was never announced.
+ */
+public final class ChangeNotifications {
+    private static final Logger LOGGER = Logger.getLogger(ChangeNotifications.class.getName());
+
+    private static final String CHANNEL = "library_changes";
+    private static final int POLL_MILLIS = 500;
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+
+    public enum Table { BOOKS, BOOK_COPIES, BOOK_AUTHORS, LOANS, RESERVATIONS, GENRES }
+
+    public enum Op { INSERT, UPDATE, DELETE }
+
+    /** One changed row. {@code bookId}/{@code userId} are set where the table has one, else null. */
+    public static final class ChangeEvent {
+        public final Table table;
+        public final Op op;
+        public final int id;
+        public final Integer bookId;
+        public final Integer userId;
+
+        ChangeEvent(Table table, Op op, int id, Integer bookId, Integer userId) {
+            this.table = table;
+            this.op = op;
+            this.id = id;
+            this.bookId = bookId;
+            this.userId = userId;
+        }
+
+        // "table:op:id:book_id:user_id", empty for absent ids
+        static ChangeEvent parse(String payload) {
+            String[] f = payload.split(":", -1);
+            if (f.length != 5 || f[2].isEmpty()) throw new IllegalArgumentException("Bad payload: " + payload);
+            return new ChangeEvent(Table.valueOf(f[0].toUpperCase(Locale.ROOT)), Op.valueOf(f[1]),
+                    Integer.parseInt(f[2]), optInt(f[3]), optInt(f[4]));
+        }
+
+        private static Integer optInt(String s) {
+            return s.isEmpty() ? null : Integer.valueOf(s);
+        }
+
+        @Override
+        public String toString() {
+            return table + " " + op + " " + id;
+        }
+    }
+
+    public interface Listener {
+        /** Changes received together, in commit order. Runs on the listener thread. */
+        void onChanges(List<ChangeEvent> events);
+
+        /** Changes may have been missed (the connection was lost): drop or reload everything derived. */
+        default void onResync() { }
+    }
+
+    private static final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private static Thread thread;
+    private static volatile boolean running;
+
+    private ChangeNotifications() { }
+
+    /** Registers {@code listener}; run the returned action to unregister. Works before {@link #start()} too. */
+    public static Runnable subscribe(Listener listener) {
+        listeners.add(listener);
+        return () -> listeners.remove(listener);
+    }
+
+    /** Starts listening; no-op when already running or disabled with {@code -Dlibrary.notify.enabled=false}. */
+    public static synchronized void start() {
+        if (thread != null || !Boolean.parseBoolean(System.getProperty("library.notify.enabled", "true"))) return;
+        running = true;
+        thread = new Thread(ChangeNotifications::listen, "library-notify");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public static synchronized void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    private static void listen() {
+        long backoff = 1000;
+        boolean connectedBefore = false;
+        while (running) {
+            try (Connection conn = DatabaseUtil.openDedicatedConnection()) {
+                try (Statement st = conn.createStatement()) {
+                    st.execute("LISTEN " + CHANNEL);
+                }
+                if (connectedBefore) dispatchResync();
+                connectedBefore = true;
+                backoff = 1000;
+
+                PGConnection pg = conn.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] received = pg.getNotifications(POLL_MILLIS);
+                    if (received != null && received.length > 0) dispatch(received);
+                }
+            } catch (SQLException e) {
+                if (!running) return;
+                LOGGER.log(Level.WARNING, "Change listener lost its connection; retrying in " + backoff + " ms", e);
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+            }
+        }
+    }
+
+    private static void dispatch(PGNotification[] received) {
+        List<ChangeEvent> events = new ArrayList<>(received.length);
+        for (PGNotification n : received) {
+            try {
+                events.add(ChangeEvent.parse(n.getParameter()));
+            } catch (IllegalArgumentException e) {
+                LOGGER.warning("Ignoring notification: " + e.getMessage());
+            }
+        }
+        if (events.isEmpty()) return;
+        List<ChangeEvent> batch = List.copyOf(events);
+        for (Listener l : listeners) {
+            try {
+                l.onChanges(batch);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Change listener failed", e);
+            }
+        }
+    }
+
+    private static void dispatchResync() {
+        for (Listener l : listeners) {
+            try {
+                l.onResync();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Change listener failed to resync", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package com.tuvarna.bg.library.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Small bounded JDBC connection pool used behind {@link DatabaseUtil#getConnection()}.
+ * <p>
+ * Callers keep using try-with-resources: closing the handed-out connection returns the
+ * physical connection to the pool instead of tearing down the socket.
+ */
+public class ConnectionPool {
+    private static final Logger LOGGER = Logger.getLogger(ConnectionPool.class.getName());
+
+    private final String url;
+    private final String username;
+    private final String password;
+
+    private final int minIdle;
+    private final int maxSize;
+    private final long borrowTimeoutMs;
+    private final long idleTimeoutMs;
+    private final long leakThresholdMs;
+    private final int validationTimeoutSec;
+
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Map<PooledConnection, Boolean> active = new ConcurrentHashMap<>();
+    private final Semaphore permits;
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean shutdown;
+
+    // ---- statistics ----
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong destroyed = new AtomicLong();
+    private final AtomicLong borrowed = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong validationFailures = new AtomicLong();
+    private final AtomicLong leaksDetected = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+
+    public ConnectionPool(String url, String username, String password,
+                          int minIdle, int maxSize, long borrowTimeoutMs,
+                          long idleTimeoutMs, long leakThresholdMs, int validationTimeoutSec) {
+        if (maxSize <= 0) throw new IllegalArgumentException("maxSize must be positive");
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.minIdle = Math.max(0, Math.min(minIdle, maxSize));
+        this.maxSize = maxSize;
+        this.borrowTimeoutMs = borrowTimeoutMs;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.leakThresholdMs = leakThresholdMs;
+        this.validationTimeoutSec = validationTimeoutSec;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, Math.min(idleTimeoutMs, leakThresholdMs > 0 ? leakThresholdMs : idleTimeoutMs) / 2);
+        housekeeper.scheduleWithFixedDelay(this::housekeep, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /* ------------------------- borrow / release ------------------------- */
+
+    public Connection getConnection() throws SQLException {
+        if (shutdown) throw new SQLException("Connection pool is shut down", "08003");
+
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMs, TimeUnit.MILLISECONDS)) {
+                timeouts.incrementAndGet();
+                throw new SQLException("Timed out after " + borrowTimeoutMs + " ms waiting for a database connection "
+                        + "(active=" + active.size() + ", max=" + maxSize + ")", "08001");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", "08001", e);
+        }
+        totalWaitNanos.addAndGet(System.nanoTime() - start);
+
+        try {
+            PooledConnection pc = takeValidIdle();
+            if (pc == null) pc = openPhysical();
+            pc.borrowedAt = System.currentTimeMillis();
+            pc.borrowSite = leakThresholdMs > 0 ? new Throwable("Connection borrowed here") : null;
+            pc.leakReported = false;
+            active.put(pc, Boolean.TRUE);
+            borrowed.incrementAndGet();
+            return pc.newHandle();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private PooledConnection takeValidIdle() {
+        PooledConnection pc;
+        while ((pc = idle.pollFirst()) != null) {
+            if (System.currentTimeMillis() - pc.lastReturnedAt > idleTimeoutMs) {
+                destroy(pc);
+                continue;
+            }
+            try {
+                if (pc.physical.isValid(validationTimeoutSec)) return pc;
+            } catch (SQLException ignore) { }
+            validationFailures.incrementAndGet();
+            destroy(pc);
+        }
+        return null;
+    }
+
+    private PooledConnection openPhysical() throws SQLException {
+        Connection physical = DriverManager.getConnection(url, username, password);
+        created.incrementAndGet();
+        return new PooledConnection(physical);
+    }
+
+    private void release(PooledConnection pc) {
+        if (active.remove(pc) == null) return; // already released
+        try {
+            if (shutdown || pc.physical.isClosed()) {
+                destroy(pc);
+                return;
+            }
+            // hand the connection back in a clean state
+            if (!pc.physical.getAutoCommit()) {
+                pc.physical.rollback();
+                pc.physical.setAutoCommit(true);
+            }
+            if (pc.physical.isReadOnly()) pc.physical.setReadOnly(false);
+            pc.physical.clearWarnings();
+            pc.lastReturnedAt = System.currentTimeMillis();
+            idle.offerFirst(pc); // LIFO keeps hot connections hot and lets cold ones age out
+        } catch (SQLException e) {
+            LOGGER.log(Level.FINE, "Discarding connection that failed to reset", e);
+            destroy(pc);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void destroy(PooledConnection pc) {
+        destroyed.incrementAndGet();
+        try {
+            pc.physical.close();
+        } catch (SQLException e) {
+            LOGGER.log(Level.FINE, "Error closing pooled connection", e);
+        }
+    }
+
+    /* ------------------------- housekeeping ------------------------- */
+
+    private void housekeep() {
+        try {
+            long now = System.currentTimeMillis();
+
+            // idle eviction, keeping at least minIdle around
+            for (PooledConnection pc : idle) {
+                if (idle.size() <= minIdle) break;
+                if (now - pc.lastReturnedAt > idleTimeoutMs && idle.remove(pc)) destroy(pc);
+            }
+
+            // top the pool back up to minIdle (only with spare permits, so we never exceed maxSize)
+            while (!shutdown && idle.size() < minIdle && permits.tryAcquire()) {
+                try {
+                    PooledConnection pc = openPhysical();
+                    pc.lastReturnedAt = now;
+                    idle.offerLast(pc);
+                } catch (SQLException e) {
+                    LOGGER.log(Level.FINE, "Could not pre-open pooled connection", e);
+                    break;
+                } finally {
+                    permits.release();
+                }
+            }
+
+            // leak detection
+            if (leakThresholdMs > 0) {
+                for (PooledConnection pc : active.keySet()) {
+                    if (!pc.leakReported && now - pc.borrowedAt > leakThresholdMs) {
+                        pc.leakReported = true;
+                        leaksDetected.incrementAndGet();
+                        LOGGER.log(Level.WARNING, "Possible connection leak: connection held for "
+                                + (now - pc.borrowedAt) + " ms", pc.borrowSite);
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Connection pool housekeeping failed", e);
+        }
+    }
+
+    public void shutdown() {
+        shutdown = true;
+        housekeeper.shutdownNow();
+        PooledConnection pc;
+        while ((pc = idle.pollFirst()) != null) destroy(pc);
+        LOGGER.info("Connection pool shut down: " + getStats());
+    }
+
+    public PoolStats getStats() {
+        long b = borrowed.get();
+        return new PoolStats(
+                active.size(), idle.size(), permits.getQueueLength(), maxSize,
+                created.get(), destroyed.get(), b, timeouts.get(),
+                validationFailures.get(), leaksDetected.get(),
+                b == 0 ? 0.0 : totalWaitNanos.get() / 1_000_000.0 / b);
+    }
+
+    /* ------------------------- pooled connection ------------------------- */
+
+    private final class PooledConnection {
+        final Connection physical;
+        volatile long borrowedAt;
+        volatile long lastReturnedAt = System.currentTimeMillis();
+        volatile Throwable borrowSite;
+        volatile boolean leakReported;
+
+        PooledConnection(Connection physical) { this.physical = physical; }
+
+        Connection newHandle() {
+            return (Connection) Proxy.newProxyInstance(
+                    ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{Connection.class},
+                    new Handle(this));
+        }
+    }
+
+    /** One logical checkout; becomes unusable once closed so a stale reference can't touch a reused connection. */
+    private final class Handle implements InvocationHandler {
+        private final PooledConnection pc;
+        private volatile boolean closed;
+
+        Handle(PooledConnection pc) { this.pc = pc; }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        release(pc);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || pc.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + pc.physical + (closed ? ", closed]" : "]");
+                default:
+                    if (closed) throw new SQLException("Connection is closed", "08003");
+                    try {
+                        return method.invoke(pc.physical, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+
+    /* ------------------------- stats snapshot ------------------------- */
+
+    public static final class PoolStats {
+        public final int active, idle, waiting, maxSize;
+        public final long created, destroyed, borrowed, timeouts, validationFailures, leaksDetected;
+        public final double avgWaitMs;
+
+        PoolStats(int active, int idle, int waiting, int maxSize,
+                  long created, long destroyed, long borrowed, long timeouts,
+                  long validationFailures, long leaksDetected, double avgWaitMs) {
+            this.active = active;
+            this.idle = idle;
+            this.waiting = waiting;
+            this.maxSize = maxSize;
+            this.created = created;
+            this.destroyed = destroyed;
+            this.borrowed = borrowed;
+            this.timeouts = timeouts;
+            this.validationFailures = validationFailures;
+            this.leaksDetected = leaksDetected;
+            this.avgWaitMs = avgWaitMs;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("active=%d idle=%d waiting=%d max=%d created=%d destroyed=%d borrowed=%d "
+                            + "timeouts=%d validationFailures=%d leaks=%d avgWait=%.2fms",
+                    active, idle, waiting, maxSize, created, destroyed, borrowed,
+                    timeouts, validationFailures, leaksDetected, avgWaitMs);
+        }
+    }
+}
@@ -12,6 +12,17 @@ public class DatabaseUtil {
     private static final String USERNAME = "postgres";
     private static final String PASSWORD = "zeri";
 
+    // Pool sizing; override with -Dlibrary.db.pool.<name>=<value>
+    private static final int POOL_MIN_IDLE = Integer.getInteger("library.db.pool.minIdle", 2);
+    private static final int POOL_MAX_SIZE = Integer.getInteger("library.db.pool.maxSize", 10);
+    private static final long POOL_BORROW_TIMEOUT_MS = Long.getLong("library.db.pool.borrowTimeoutMs", 10_000L);
+    private static final long POOL_IDLE_TIMEOUT_MS = Long.getLong("library.db.pool.idleTimeoutMs", 300_000L);
+    private static final long POOL_LEAK_THRESHOLD_MS = Long.getLong("library.db.pool.leakThresholdMs", 30_000L);
+    private static final int POOL_VALIDATION_TIMEOUT_SEC = Integer.getInteger("library.db.pool.validationTimeoutSec", 2);
+
+    private static volatile ConnectionPool pool;
+    private static volatile boolean fuzzySearchAvailable = true;
+
     static {
         try {
             Class.forName("org.postgresql.Driver");
@@ -21,9 +32,46 @@ public class DatabaseUtil {
     }
 
     public static Connection getConnection() throws SQLException {
+        return pool().getConnection();
+    }
+
+    /**
+     * A physical connection outside the pool, for sessions that stay open for the life of the app
+     * (e.g. {@link ChangeNotifications}' LISTEN session). The caller closes it.
+     */
+    public static Connection openDedicatedConnection() throws SQLException {
         return DriverManager.getConnection(URL, USERNAME, PASSWORD);
     }
 
+    private static ConnectionPool pool() {
+        ConnectionPool p = pool;
+        if (p == null) {
+            synchronized (DatabaseUtil.class) {
+                p = pool;
+                if (p == null) {
+                    p = new ConnectionPool(URL, USERNAME, PASSWORD,
+                            POOL_MIN_IDLE, POOL_MAX_SIZE, POOL_BORROW_TIMEOUT_MS,
+                            POOL_IDLE_TIMEOUT_MS, POOL_LEAK_THRESHOLD_MS, POOL_VALIDATION_TIMEOUT_SEC);
+                    pool = p;
+                }
+            }
+        }
+        return p;
+    }
+
+    public static ConnectionPool.PoolStats getPoolStats() {
+        return pool().getStats();
+    }
+
+    public static void shutdown() {
+        synchronized (DatabaseUtil.class) {
+            if (pool != null) {
+                pool.shutdown();
+                pool = null;
+            }
+        }
+    }
+
     public static void closeConnection(Connection connection) {
         if (connection != null) {
             try {
@@ -156,12 +204,30 @@ public class DatabaseUtil {
             // Insert default roles if they don't exist
             insertDefaultRoles(connection);
 
+            // Versioned changes on top of the base tables (indexes, search, ...)
+            MigrationRunner.Result result;
+            try {
+                result = MigrationRunner.migrate(connection, Migrations.all());
+            } catch (SQLException e) {
+                // the code expects the whole schema: refuse to start on a half-migrated database
+                throw new IllegalStateException("Schema migration failed, not starting: " + e.getMessage(), e);
+            }
+            if (result.applied > 0) LOGGER.info(result.applied + " schema migration(s) applied");
+            fuzzySearchAvailable = !result.skipped.contains(Migrations.TRIGRAM_INDEXES);
+            if (!fuzzySearchAvailable) LOGGER.warning("pg_trgm is not available: typo-tolerant search is disabled");
+
             LOGGER.info("Database initialized successfully");
         } catch (SQLException e) {
+            // unreachable database: the login screen reports it
             LOGGER.log(Level.SEVERE, "Error initializing database", e);
         }
     }
 
+    /** False when the optional pg_trgm migration couldn't be applied on this start. */
+    public static boolean isFuzzySearchAvailable() {
+        return fuzzySearchAvailable;
+    }
+
     private static void insertDefaultRoles(Connection connection) throws SQLException {
         String checkRoles = "SELECT COUNT(*) FROM roles";
         String insertRoles = "INSERT INTO roles (name) VALUES ('ADMIN'), ('MANAGER'), ('CLIENT')";
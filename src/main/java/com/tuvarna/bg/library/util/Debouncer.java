@@ -0,0 +1,25 @@
+package com.tuvarna.bg.library.util;
+
+import javafx.animation.PauseTransition;
+import javafx.util.Duration;
+
+/**
+ * Runs an action once input has been quiet for a fixed window; every {@link #trigger} restarts the window.
+ * FX thread only.
+ */
+public class Debouncer {
+    private final PauseTransition pause;
+
+    public Debouncer(Duration window) {
+        this.pause = new PauseTransition(window);
+    }
+
+    public void trigger(Runnable action) {
+        pause.setOnFinished(e -> action.run());
+        pause.playFromStart();
+    }
+
+    public void cancel() {
+        pause.stop();
+    }
+}
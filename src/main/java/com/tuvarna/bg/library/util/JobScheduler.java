@@ -0,0 +1,219 @@
+package com.tuvarna.bg.library.util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs periodic maintenance jobs in-process.
+ * <p>
+ * Every instance of the app schedules the same jobs, but a job runs once per period across all of them.
+ * Each tick opens a transaction on its own pooled connection and takes a transaction advisory lock keyed
+ * by the job name ({@code pg_try_advisory_xact_lock}); under it, {@code job_runs} (migration V9) says when
+ * the job last ran anywhere. If another instance holds the lock or ran the job less than a period ago, the
+ * tick is skipped. Otherwise the job runs and its start time is recorded in the same transaction, whose
+ * end (commit, rollback or a dropped session) always releases the lock. A failed run isn't recorded, so
+ * the next tick on any instance retries it. Runs, skips, failures and timings are kept per job
+ * ({@link #getStats}).
+ */
+public class JobScheduler {
+    private static final Logger LOGGER = Logger.getLogger(JobScheduler.class.getName());
+
+    // Advisory lock class for scheduled jobs; the second key is the job name's hash
+    private static final int LOCK_CLASS = 0x4A42; // "JB"
+
+    @FunctionalInterface
+    public interface Job {
+        void run() throws Exception;
+    }
+
+    /** Point-in-time metrics of one job. */
+    public static final class JobStats {
+        public final String name;
+        public final Duration period;
+        public final long runs, failures, skipped;
+        public final long lastMillis, maxMillis, totalMillis;
+        public final Instant lastRunAt;   // null = never ran here
+        public final String lastError;    // null = last run succeeded
+
+        JobStats(String name, Duration period, long runs, long failures, long skipped,
+                 long lastMillis, long maxMillis, long totalMillis, Instant lastRunAt, String lastError) {
+            this.name = name;
+            this.period = period;
+            this.runs = runs;
+            this.failures = failures;
+            this.skipped = skipped;
+            this.lastMillis = lastMillis;
+            this.maxMillis = maxMillis;
+            this.totalMillis = totalMillis;
+            this.lastRunAt = lastRunAt;
+            this.lastError = lastError;
+        }
+
+        public long avgMillis() {
+            return runs == 0 ? 0 : totalMillis / runs;
+        }
+    }
+
+    private static final class Registered {
+        final String name;
+        final Duration period;
+        final Job job;
+        long runs, failures, skipped, lastMillis, maxMillis, totalMillis;
+        Instant lastRunAt;
+        String lastError;
+
+        Registered(String name, Duration period, Job job) {
+            this.name = name;
+            this.period = period;
+            this.job = job;
+        }
+
+        synchronized JobStats snapshot() {
+            return new JobStats(name, period, runs, failures, skipped, lastMillis, maxMillis, totalMillis, lastRunAt, lastError);
+        }
+    }
+
+    private final ScheduledExecutorService executor;
+    private final Map<String, Registered> jobs = new ConcurrentHashMap<>();
+    private final List<String> order = new ArrayList<>(); // registration order, for display
+
+    public JobScheduler(int threads) {
+        AtomicInteger n = new AtomicInteger();
+        this.executor = Executors.newScheduledThreadPool(threads, r -> {
+            Thread t = new Thread(r, "library-job-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Runs {@code job} after {@code initialDelay}, then {@code period} after each run finishes. */
+    public synchronized void schedule(String name, Duration initialDelay, Duration period, Job job) {
+        if (jobs.containsKey(name)) throw new IllegalArgumentException("Job already scheduled: " + name);
+        Registered r = new Registered(name, period, job);
+        jobs.put(name, r);
+        order.add(name);
+        executor.scheduleWithFixedDelay(() -> runOnce(r, false),
+                initialDelay.toMillis(), period.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /** Runs a scheduled job now, however recently it ran (still under its lock), e.g. from an admin button. */
+    public void runNow(String name) {
+        Registered r = jobs.get(name);
+        if (r == null) throw new IllegalArgumentException("Unknown job: " + name);
+        executor.execute(() -> runOnce(r, true));
+    }
+
+    public synchronized List<JobStats> getStats() {
+        List<JobStats> out = new ArrayList<>(order.size());
+        for (String name : order) out.add(jobs.get(name).snapshot());
+        return out;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void runOnce(Registered r, boolean force) {
+        try (Connection conn = DatabaseUtil.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                if (!tryLock(conn, r.name) || (!force && ranRecently(conn, r))) {
+                    conn.rollback();
+                    synchronized (r) { r.skipped++; }
+                    LOGGER.fine(() -> "Job " + r.name + " is running or ran elsewhere, skipped");
+                    return;
+                }
+                if (execute(r)) {
+                    recordRun(conn, r.name);
+                    conn.commit();
+                } else {
+                    conn.rollback();
+                }
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            // could not take the lock or record the run (database down?): counts as a failed run
+            synchronized (r) {
+                r.failures++;
+                r.lastError = e.getMessage();
+            }
+            LOGGER.log(Level.WARNING, "Job " + r.name + " could not run", e);
+        }
+    }
+
+    // true when the job succeeded
+    private boolean execute(Registered r) {
+        Instant startedAt = Instant.now();
+        long start = System.nanoTime();
+        String error = null;
+        try {
+            r.job.run();
+        } catch (Exception e) {
+            error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            LOGGER.log(Level.WARNING, "Job " + r.name + " failed", e);
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        synchronized (r) {
+            r.runs++;
+            if (error != null) r.failures++;
+            r.lastError = error;
+            r.lastRunAt = startedAt;
+            r.lastMillis = millis;
+            r.maxMillis = Math.max(r.maxMillis, millis);
+            r.totalMillis += millis;
+        }
+        LOGGER.fine(() -> "Job " + r.name + " finished in " + millis + " ms");
+        return error == null;
+    }
+
+    private static boolean tryLock(Connection conn, String name) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT pg_try_advisory_xact_lock(?, ?)")) {
+            ps.setInt(1, LOCK_CLASS);
+            ps.setInt(2, name.hashCode());
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+
+    // Ran (on any instance) within the last period, less some slack so instances whose ticks drift
+    // slightly apart don't push each other's runs a whole period back
+    private static boolean ranRecently(Connection conn, Registered r) throws SQLException {
+        long windowMillis = r.period.toMillis() * 9 / 10;
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT 1 FROM job_runs WHERE name = ? AND last_run_at > now() - make_interval(secs => ?)")) {
+            ps.setString(1, r.name);
+            ps.setDouble(2, windowMillis / 1000.0);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    // now() is the transaction start, i.e. when this run began
+    private static void recordRun(Connection conn, String name) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO job_runs (name, last_run_at) VALUES (?, now()) " +
+                "ON CONFLICT (name) DO UPDATE SET last_run_at = EXCLUDED.last_run_at")) {
+            ps.setString(1, name);
+            ps.executeUpdate();
+        }
+    }
+}
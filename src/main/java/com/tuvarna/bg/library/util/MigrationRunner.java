@@ -0,0 +1,175 @@
+package com.tuvarna.bg.library.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.*;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Applies the versioned schema changes from {@link Migrations} on startup.
+ * <p>
+ * Applied versions are recorded in {@code schema_migrations}; each pending migration runs in its own
+ * transaction together with its bookkeeping row, so a failure leaves nothing half-applied and the next
+ * start retries it. A failing migration stops the run, unless it is {@link Migration#optional optional}
+ * (e.g. one that needs rights the app's role may lack): that one is skipped and reported in the
+ * {@link Result}, and the versions after it still apply. A session advisory lock keeps two instances
+ * starting at once from racing.
+ */
+public class MigrationRunner {
+    private static final Logger LOGGER = Logger.getLogger(MigrationRunner.class.getName());
+
+    // pg_advisory_lock key reserved for schema migrations
+    private static final long LOCK_KEY = 0x4C49425F4D494752L; // "LIB_MIGR"
+
+    /** One schema version: an ordered list of statements applied atomically. */
+    public static final class Migration {
+        final int version;
+        final String description;
+        final List<String> statements;
+        final boolean optional;
+
+        public Migration(int version, String description, String... statements) {
+            this(version, description, false, statements);
+        }
+
+        private Migration(int version, String description, boolean optional, String... statements) {
+            this.version = version;
+            this.description = description;
+            this.optional = optional;
+            this.statements = List.of(statements);
+        }
+
+        /** A migration whose failure is logged and skipped (retried next start) instead of stopping the run. */
+        public static Migration optional(int version, String description, String... statements) {
+            return new Migration(version, description, true, statements);
+        }
+
+        String checksum() {
+            try {
+                MessageDigest sha = MessageDigest.getInstance("SHA-256");
+                for (String s : statements) sha.update(s.strip().getBytes(StandardCharsets.UTF_8));
+                return HexFormat.of().formatHex(sha.digest());
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /** Outcome of {@link #migrate}. */
+    public static final class Result {
+        public final int applied;
+        public final Set<Integer> skipped; // optional versions that failed this time
+
+        Result(int applied, Set<Integer> skipped) {
+            this.applied = applied;
+            this.skipped = Set.copyOf(skipped);
+        }
+    }
+
+    /**
+     * Applies every pending migration. Throws at the first failure of a required migration; failed
+     * optional ones are skipped and listed in the result.
+     */
+    public static Result migrate(Connection conn, List<Migration> migrations) throws SQLException {
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(true);
+        try (Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE IF NOT EXISTS schema_migrations (" +
+                    "version INTEGER PRIMARY KEY, " +
+                    "description TEXT NOT NULL, " +
+                    "checksum TEXT NOT NULL, " +
+                    "applied_at TIMESTAMPTZ NOT NULL DEFAULT now())");
+        }
+
+        lock(conn);
+        try {
+            Map<Integer, String> applied = appliedVersions(conn);
+            int count = 0;
+            Set<Integer> skipped = new TreeSet<>();
+            for (Migration m : migrations) {
+                String checksum = m.checksum();
+                String recorded = applied.get(m.version);
+                if (recorded != null) {
+                    if (!recorded.equals(checksum)) {
+                        LOGGER.warning("Migration V" + m.version + " (" + m.description + ") changed after it was applied");
+                    }
+                    continue;
+                }
+                try {
+                    apply(conn, m, checksum);
+                    count++;
+                } catch (SQLException e) {
+                    if (!m.optional) throw e;
+                    skipped.add(m.version);
+                    LOGGER.log(Level.WARNING, "Optional migration V" + m.version + " (" + m.description
+                            + ") skipped; it will be retried on the next start", e);
+                }
+            }
+            return new Result(count, skipped);
+        } finally {
+            unlock(conn);
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static void apply(Connection conn, Migration m, String checksum) throws SQLException {
+        long start = System.nanoTime();
+        conn.setAutoCommit(false);
+        try {
+            for (String sql : m.statements) {
+                try (Statement st = conn.createStatement()) {
+                    st.execute(sql);
+                }
+            }
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "INSERT INTO schema_migrations (version, description, checksum) VALUES (?, ?, ?)")) {
+                ps.setInt(1, m.version);
+                ps.setString(2, m.description);
+                ps.setString(3, checksum);
+                ps.executeUpdate();
+            }
+            conn.commit();
+            LOGGER.info(String.format("Applied migration V%d (%s) in %d ms",
+                    m.version, m.description, (System.nanoTime() - start) / 1_000_000));
+        } catch (SQLException e) {
+            conn.rollback();
+            if (!m.optional) LOGGER.log(Level.SEVERE, "Migration V" + m.version + " (" + m.description + ") failed", e);
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    private static Map<Integer, String> appliedVersions(Connection conn) throws SQLException {
+        Map<Integer, String> applied = new HashMap<>();
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT version, checksum FROM schema_migrations")) {
+            while (rs.next()) applied.put(rs.getInt(1), rs.getString(2));
+        }
+        return applied;
+    }
+
+    private static void lock(Connection conn) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT pg_advisory_lock(?)")) {
+            ps.setLong(1, LOCK_KEY);
+            ps.execute();
+        }
+    }
+
+    private static void unlock(Connection conn) {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT pg_advisory_unlock(?)")) {
+            ps.setLong(1, LOCK_KEY);
+            ps.execute();
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "Could not release migration lock", e);
+        }
+    }
+}
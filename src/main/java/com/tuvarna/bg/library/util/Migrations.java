@@ -0,0 +1,378 @@
+package com.tuvarna.bg.library.util;
+
+import com.tuvarna.bg.library.util.MigrationRunner.Migration;
+
+import java.util.List;
+
+/**
+ * Schema history, applied in order by {@link MigrationRunner}. Never edit a migration that has shipped;
+ * add a new version instead.
+ */
+final class Migrations {
+
+    /** Version of the optional pg_trgm migration; see {@link DatabaseUtil#isFuzzySearchAvailable()}. */
+    static final int TRIGRAM_INDEXES = 2;
+
+    private Migrations() { }
+
+    static List<Migration> all() {
+        return List.of(
+                // Full-text document per book for BookSearchService. search_doc is recomputed by
+                // library_refresh_search_doc() whenever the book or any of its authors/genres/publisher changes.
+                new Migration(1, "books full-text search document",
+                        "ALTER TABLE books ADD COLUMN IF NOT EXISTS search_doc tsvector",
+
+                        """
+                        CREATE OR REPLACE FUNCTION library_refresh_search_doc(p_book INTEGER) RETURNS void AS $$
+                            UPDATE books b SET search_doc =
+                                  setweight(to_tsvector('simple', coalesce(b.title, '')), 'A')
+                               || setweight(to_tsvector('simple', coalesce(b.isbn, '')), 'A')
+                               || setweight(to_tsvector('simple', coalesce((
+                                      SELECT string_agg(a.full_name, ' ') FROM book_authors ba
+                                      JOIN authors a ON a.authors_id = ba.authors_id
+                                      WHERE ba.books_id = b.books_id), '')), 'B')
+                               || setweight(to_tsvector('simple', coalesce((
+                                      SELECT string_agg(g.gen_name, ' ') FROM book_genres bg
+                                      JOIN genres g ON g.genres_id = bg.genres_id
+                                      WHERE bg.books_id = b.books_id), '')), 'C')
+                               || setweight(to_tsvector('simple', coalesce((
+                                      SELECT p.pub_name FROM publishers p
+                                      WHERE p.publishers_id = b.publishers_id), '')), 'C')
+                               || setweight(to_tsvector('simple',
+                                      coalesce(b.language, '') || ' ' || coalesce(b.publication_year::text, '')), 'D')
+                            WHERE b.books_id = p_book
+                        $$ LANGUAGE sql
+                        """,
+
+                        // books: own columns (search_doc itself is not in the list, so the refresh doesn't re-fire)
+                        """
+                        CREATE OR REPLACE FUNCTION library_books_search_trg() RETURNS trigger AS $$
+                        BEGIN
+                            PERFORM library_refresh_search_doc(NEW.books_id);
+                            RETURN NULL;
+                        END $$ LANGUAGE plpgsql
+                        """,
+                        "DROP TRIGGER IF EXISTS books_search_doc ON books",
+                        "CREATE TRIGGER books_search_doc AFTER INSERT OR UPDATE OF title, isbn, language, publication_year, publishers_id " +
+                                "ON books FOR EACH ROW EXECUTE FUNCTION library_books_search_trg()",
+
+                        // link tables: book_authors / book_genres rows carry books_id
+                        """
+                        CREATE OR REPLACE FUNCTION library_links_search_trg() RETURNS trigger AS $$
+                        BEGIN
+                            IF TG_OP IN ('INSERT', 'UPDATE') THEN PERFORM library_refresh_search_doc(NEW.books_id); END IF;
+                            IF TG_OP IN ('DELETE', 'UPDATE') THEN PERFORM library_refresh_search_doc(OLD.books_id); END IF;
+                            RETURN NULL;
+                        END $$ LANGUAGE plpgsql
+                        """,
+                        "DROP TRIGGER IF EXISTS book_authors_search_doc ON book_authors",
+                        "CREATE TRIGGER book_authors_search_doc AFTER INSERT OR UPDATE OR DELETE " +
+                                "ON book_authors FOR EACH ROW EXECUTE FUNCTION library_links_search_trg()",
+                        "DROP TRIGGER IF EXISTS book_genres_search_doc ON book_genres",
+                        "CREATE TRIGGER book_genres_search_doc AFTER INSERT OR UPDATE OR DELETE " +
+                                "ON book_genres FOR EACH ROW EXECUTE FUNCTION library_links_search_trg()",
+
+                        // renames of an author/genre/publisher touch every book that references it
+                        """
+                        CREATE OR REPLACE FUNCTION library_names_search_trg() RETURNS trigger AS $$
+                        BEGIN
+                            IF TG_TABLE_NAME = 'authors' THEN
+                                PERFORM library_refresh_search_doc(books_id) FROM book_authors WHERE authors_id = NEW.authors_id;
+                            ELSIF TG_TABLE_NAME = 'genres' THEN
+                                PERFORM library_refresh_search_doc(books_id) FROM book_genres WHERE genres_id = NEW.genres_id;
+                            ELSE
+                                PERFORM library_refresh_search_doc(books_id) FROM books WHERE publishers_id = NEW.publishers_id;
+                            END IF;
+                            RETURN NULL;
+                        END $$ LANGUAGE plpgsql
+                        """,
+                        "DROP TRIGGER IF EXISTS authors_search_doc ON authors",
+                        "CREATE TRIGGER authors_search_doc AFTER UPDATE OF full_name " +
+                                "ON authors FOR EACH ROW EXECUTE FUNCTION library_names_search_trg()",
+                        "DROP TRIGGER IF EXISTS genres_search_doc ON genres",
+                        "CREATE TRIGGER genres_search_doc AFTER UPDATE OF gen_name " +
+                                "ON genres FOR EACH ROW EXECUTE FUNCTION library_names_search_trg()",
+                        "DROP TRIGGER IF EXISTS publishers_search_doc ON publishers",
+                        "CREATE TRIGGER publishers_search_doc AFTER UPDATE OF pub_name " +
+                                "ON publishers FOR EACH ROW EXECUTE FUNCTION library_names_search_trg()",
+
+                        "CREATE INDEX IF NOT EXISTS idx_books_search_doc ON books USING GIN (search_doc)",
+
+                        // backfill rows that predate the column
+                        "SELECT library_refresh_search_doc(books_id) FROM books WHERE search_doc IS NULL"
+                ),
+
+                // Trigram indexes for BookSearchService.fuzzySearch (word_similarity / <% operator). Optional:
+                // CREATE EXTENSION can need rights the app's role lacks; fuzzy search is off until it applies.
+                Migration.optional(TRIGRAM_INDEXES, "trigram indexes for fuzzy search",
+                        "CREATE EXTENSION IF NOT EXISTS pg_trgm",
+                        "CREATE INDEX IF NOT EXISTS idx_books_title_trgm ON books USING GIN (title gin_trgm_ops)",
+                        "CREATE INDEX IF NOT EXISTS idx_authors_full_name_trgm ON authors USING GIN (full_name gin_trgm_ops)"
+                ),
+
+                new Migration(3, "indexes for hot lookups",
+                        "CREATE INDEX IF NOT EXISTS idx_loans_users_id ON loans (users_id)",
+                        "CREATE INDEX IF NOT EXISTS idx_loans_copy_id ON loans (copy_id)",
+                        // active loans are a small, hot subset of a table that only grows
+                        "CREATE INDEX IF NOT EXISTS idx_loans_active_user ON loans (users_id) WHERE returned_at IS NULL",
+                        "CREATE INDEX IF NOT EXISTS idx_loans_active_due ON loans (due_date) WHERE returned_at IS NULL",
+                        // keyset paging order of the manager's loans tab
+                        "CREATE INDEX IF NOT EXISTS idx_loans_borrowed_at ON loans (borrowed_at DESC, loans_id DESC)",
+                        "CREATE INDEX IF NOT EXISTS idx_book_copies_book_status ON book_copies (books_id, status)",
+                        "CREATE INDEX IF NOT EXISTS idx_book_copies_available ON book_copies (books_id) WHERE status = 'AVAILABLE'",
+                        "CREATE INDEX IF NOT EXISTS idx_reservations_user_book_status ON reservations (user_id, book_id, status)",
+                        // keyset paging order of the manager's reservations tab
+                        "CREATE INDEX IF NOT EXISTS idx_reservations_created_at ON reservations (created_at DESC, reservations_id DESC)",
+                        "CREATE INDEX IF NOT EXISTS idx_book_authors_authors_id ON book_authors (authors_id)",
+                        "CREATE INDEX IF NOT EXISTS idx_book_genres_genres_id ON book_genres (genres_id)"
+                ),
+
+                // Dashboard counters kept current by row triggers, so the KPIs are a single-row read instead
+                // of full scans. Overdue loans depend on the date, not on writes, so they stay a query over
+                // idx_loans_active_due. InventoryCounters.reconcile() repairs any drift (e.g. after TRUNCATE).
+                new Migration(4, "trigger-maintained inventory counters",
+                        "CREATE TABLE IF NOT EXISTS library_counters (" +
+                                "name TEXT PRIMARY KEY, " +
+                                "value BIGINT NOT NULL, " +
+                                "updated_at TIMESTAMPTZ NOT NULL DEFAULT now())",
+
+                        """
+                        CREATE OR REPLACE FUNCTION library_bump_counter(p_name TEXT, p_delta BIGINT) RETURNS void AS $$
+                            UPDATE library_counters SET value = value + p_delta, updated_at = now()
+                            WHERE name = p_name AND p_delta <> 0
+                        $$ LANGUAGE sql
+                        """,
+
+                        // books / users: plain row counts
+                        """
+                        CREATE OR REPLACE FUNCTION library_rows_counter_trg() RETURNS trigger AS $$
+                        BEGIN
+                            PERFORM library_bump_counter(TG_TABLE_NAME, CASE TG_OP WHEN 'INSERT' THEN 1 ELSE -1 END);
+                            RETURN NULL;
+                        END $$ LANGUAGE plpgsql
+                        """,
+                        "DROP TRIGGER IF EXISTS books_counter ON books",
+                        "CREATE TRIGGER books_counter AFTER INSERT OR DELETE " +
+                                "ON books FOR EACH ROW EXECUTE FUNCTION library_rows_counter_trg()",
+                        "DROP TRIGGER IF EXISTS users_counter ON users",
+                        "CREATE TRIGGER users_counter AFTER INSERT OR DELETE " +
+                                "ON users FOR EACH ROW EXECUTE FUNCTION library_rows_counter_trg()",
+
+                        // book_copies: total and AVAILABLE
+                        """
+                        CREATE OR REPLACE FUNCTION library_copies_counter_trg() RETURNS trigger AS $$
+                        DECLARE
+                            was_available INTEGER := 0;
+                            is_available INTEGER := 0;
+                        BEGIN
+                            IF TG_OP IN ('UPDATE', 'DELETE') THEN was_available := (OLD.status = 'AVAILABLE')::int; END IF;
+                            IF TG_OP IN ('INSERT', 'UPDATE') THEN is_available := (NEW.status = 'AVAILABLE')::int; END IF;
+                            IF TG_OP = 'INSERT' THEN PERFORM library_bump_counter('book_copies', 1); END IF;
+                            IF TG_OP = 'DELETE' THEN PERFORM library_bump_counter('book_copies', -1); END IF;
+                            PERFORM library_bump_counter('available_copies', is_available - was_available);
+                            RETURN NULL;
+                        END $$ LANGUAGE plpgsql
+                        """,
+                        "DROP TRIGGER IF EXISTS book_copies_counter ON book_copies",
+                        "CREATE TRIGGER book_copies_counter AFTER INSERT OR DELETE OR UPDATE OF status " +
+                                "ON book_copies FOR EACH ROW EXECUTE FUNCTION library_copies_counter_trg()",
+
+                        // loans: active = not yet returned
+                        """
+                        CREATE OR REPLACE FUNCTION library_loans_counter_trg() RETURNS trigger AS $$
+                        DECLARE
+                            was_active INTEGER := 0;
+                            is_active INTEGER := 0;
+                        BEGIN
+                            IF TG_OP IN ('UPDATE', 'DELETE') THEN was_active := (OLD.returned_at IS NULL)::int; END IF;
+                            IF TG_OP IN ('INSERT', 'UPDATE') THEN is_active := (NEW.returned_at IS NULL)::int; END IF;
+                            PERFORM library_bump_counter('active_loans', is_active - was_active);
+                            RETURN NULL;
+                        END $$ LANGUAGE plpgsql
+                        """,
+                        "DROP TRIGGER IF EXISTS loans_counter ON loans",
+                        "CREATE TRIGGER loans_counter AFTER INSERT OR DELETE OR UPDATE OF returned_at " +
+                                "ON loans FOR EACH ROW EXECUTE FUNCTION library_loans_counter_trg()",
+
+                        // seed; runs in the same transaction as the triggers, so nothing slips in between
+                        "LOCK TABLE books, users, book_copies, loans IN SHARE MODE",
+                        "INSERT INTO library_counters (name, value) VALUES " +
+                                "('books', (SELECT COUNT(*) FROM books)), " +
+                                "('users', (SELECT COUNT(*) FROM users)), " +
+                                "('book_copies', (SELECT COUNT(*) FROM book_copies)), " +
+                                "('available_copies', (SELECT COUNT(*) FROM book_copies WHERE status = 'AVAILABLE')), " +
+                                "('active_loans', (SELECT COUNT(*) FROM loans WHERE returned_at IS NULL)) " +
+                                "ON CONFLICT (name) DO UPDATE SET value = EXCLUDED.value, updated_at = now()"
+                ),
+
+                // Reports tab leaderboards, precomputed per window (0 = all time, else the last N days) and
+                // refreshed concurrently by Leaderboards. The unique (window_days, pos) indexes are what
+                // REFRESH ... CONCURRENTLY needs; library_leaderboards records when each view was last refreshed.
+                new Migration(5, "materialized leaderboards",
+                        """
+                        CREATE MATERIALIZED VIEW IF NOT EXISTS library_top_books AS
+                        SELECT window_days, books_id, title, times, pos FROM (
+                            SELECT w.window_days, b.books_id, b.title, COUNT(*) AS times,
+                                   row_number() OVER (PARTITION BY w.window_days ORDER BY COUNT(*) DESC, b.title, b.books_id) AS pos
+                            FROM (VALUES (0), (7), (30), (365)) w(window_days)
+                            JOIN loans l ON w.window_days = 0 OR l.borrowed_at >= now() - make_interval(days => w.window_days)
+                            JOIN book_copies bc ON bc.copies_id = l.copy_id
+                            JOIN books b ON b.books_id = bc.books_id
+                            GROUP BY w.window_days, b.books_id, b.title
+                        ) ranked
+                        WHERE pos <= 50
+                        """,
+                        "CREATE UNIQUE INDEX IF NOT EXISTS idx_library_top_books_pos ON library_top_books (window_days, pos)",
+
+                        """
+                        CREATE MATERIALIZED VIEW IF NOT EXISTS library_top_borrowers AS
+                        SELECT window_days, users_id, name, loans_count, pos FROM (
+                            SELECT w.window_days, u.users_id,
+                                   COALESCE(TRIM(u.first_name || ' ' || u.last_name), u.username) AS name,
+                                   COUNT(*) AS loans_count,
+                                   row_number() OVER (PARTITION BY w.window_days
+                                                      ORDER BY COUNT(*) DESC, COALESCE(TRIM(u.first_name || ' ' || u.last_name), u.username), u.users_id) AS pos
+                            FROM (VALUES (0), (7), (30), (365)) w(window_days)
+                            JOIN loans l ON w.window_days = 0 OR l.borrowed_at >= now() - make_interval(days => w.window_days)
+                            JOIN users u ON u.users_id = l.users_id
+                            GROUP BY w.window_days, u.users_id
+                        ) ranked
+                        WHERE pos <= 50
+                        """,
+                        "CREATE UNIQUE INDEX IF NOT EXISTS idx_library_top_borrowers_pos ON library_top_borrowers (window_days, pos)",
+
+                        "CREATE TABLE IF NOT EXISTS library_leaderboards (" +
+                                "name TEXT PRIMARY KEY, " +
+                                "refreshed_at TIMESTAMPTZ NOT NULL)",
+                        "INSERT INTO library_leaderboards (name, refreshed_at) VALUES " +
+                                "('library_top_books', now()), ('library_top_borrowers', now()) " +
+                                "ON CONFLICT (name) DO UPDATE SET refreshed_at = EXCLUDED.refreshed_at"
+                ),
+
+                // Reservation queue for ReservationEngine: the full status lifecycle, the copy a READY
+                // reservation is holding, and partial indexes for the queue head and expiring holds
+                new Migration(6, "reservation queue",
+                        "ALTER TABLE reservations DROP CONSTRAINT IF EXISTS reservations_status_check",
+                        "ALTER TABLE reservations ADD CONSTRAINT reservations_status_check " +
+                                "CHECK (status IN ('PENDING','READY','COMPLETED','EXPIRED','CANCELLED'))",
+                        "ALTER TABLE reservations ADD COLUMN IF NOT EXISTS copy_id INTEGER " +
+                                "REFERENCES book_copies(copies_id) ON DELETE SET NULL",
+                        "CREATE INDEX IF NOT EXISTS idx_reservations_queue ON reservations (book_id, created_at, reservations_id) " +
+                                "WHERE status = 'PENDING'",
+                        "CREATE INDEX IF NOT EXISTS idx_reservations_ready_expiry ON reservations (expires_at) " +
+                                "WHERE status = 'READY'",
+                        "CREATE INDEX IF NOT EXISTS idx_reservations_copy_id ON reservations (copy_id) " +
+                                "WHERE copy_id IS NOT NULL"
+                ),
+
+                // When the overdue sweep (MaintenanceJobs) first saw a loan past its due date
+                new Migration(7, "loan overdue marker",
+                        "ALTER TABLE loans ADD COLUMN IF NOT EXISTS overdue_at TIMESTAMPTZ",
+                        "UPDATE loans SET overdue_at = now() " +
+                                "WHERE returned_at IS NULL AND due_date < CURRENT_DATE AND overdue_at IS NULL"
+                ),
+
+                // Row changes announced on the library_changes channel for ChangeNotifications. Payload is
+                // "table:op:id:book_id:user_id"; the trigger arguments name the columns behind the last three
+                // ('' = not applicable to that table, sent empty).
+                new Migration(8, "change notifications",
+                        """
+                        CREATE OR REPLACE FUNCTION library_notify_change() RETURNS trigger AS $$
+                        DECLARE
+                            r jsonb := CASE WHEN TG_OP = 'DELETE' THEN to_jsonb(OLD) ELSE to_jsonb(NEW) END;
+                        BEGIN
+                            PERFORM pg_notify('library_changes', TG_TABLE_NAME || ':' || TG_OP
+                                || ':' || coalesce(r ->> TG_ARGV[0], '')
+                                || ':' || coalesce(r ->> NULLIF(TG_ARGV[1], ''), '')
+                                || ':' || coalesce(r ->> NULLIF(TG_ARGV[2], ''), ''));
+                            RETURN NULL;
+                        END $$ LANGUAGE plpgsql
+                        """,
+                        "DROP TRIGGER IF EXISTS books_notify ON books",
+                        // not on search_doc: its trigger-driven refresh isn't a change anyone shows
+                        "CREATE TRIGGER books_notify AFTER INSERT OR DELETE OR UPDATE OF title, summary, isbn, language, " +
+                                "publication_year, publishers_id, image_path ON books " +
+                                "FOR EACH ROW EXECUTE FUNCTION library_notify_change('books_id', 'books_id', '')",
+                        "DROP TRIGGER IF EXISTS book_copies_notify ON book_copies",
+                        "CREATE TRIGGER book_copies_notify AFTER INSERT OR UPDATE OR DELETE ON book_copies " +
+                                "FOR EACH ROW EXECUTE FUNCTION library_notify_change('copies_id', 'books_id', '')",
+                        "DROP TRIGGER IF EXISTS book_authors_notify ON book_authors",
+                        "CREATE TRIGGER book_authors_notify AFTER INSERT OR UPDATE OR DELETE ON book_authors " +
+                                "FOR EACH ROW EXECUTE FUNCTION library_notify_change('books_id', 'books_id', '')",
+                        "DROP TRIGGER IF EXISTS loans_notify ON loans",
+                        "CREATE TRIGGER loans_notify AFTER INSERT OR UPDATE OR DELETE ON loans " +
+                                "FOR EACH ROW EXECUTE FUNCTION library_notify_change('loans_id', '', 'users_id')",
+                        "DROP TRIGGER IF EXISTS reservations_notify ON reservations",
+                        "CREATE TRIGGER reservations_notify AFTER INSERT OR UPDATE OR DELETE ON reservations " +
+                                "FOR EACH ROW EXECUTE FUNCTION library_notify_change('reservations_id', 'book_id', 'user_id')",
+                        "DROP TRIGGER IF EXISTS genres_notify ON genres",
+                        "CREATE TRIGGER genres_notify AFTER INSERT OR UPDATE OR DELETE ON genres " +
+                                "FOR EACH ROW EXECUTE FUNCTION library_notify_change('genres_id', '', '')"
+                ),
+
+                // When each JobScheduler job last ran on any instance, so it runs once per period overall
+                new Migration(9, "job run ledger",
+                        "CREATE TABLE IF NOT EXISTS job_runs (" +
+                                "name TEXT PRIMARY KEY, " +
+                                "last_run_at TIMESTAMPTZ NOT NULL)"
+                ),
+
+                // Fewer notifying transactions (their commits serialize on the NOTIFY queue lock): copy status
+                // flips and loan columns nobody shows (overdue_at, ...) no longer notify. An author rename is
+                // announced as a book_authors change of each of the author's books, so AuthorLineCache drops
+                // exactly those lines.
+                new Migration(10, "narrower change notifications",
+                        "DROP TRIGGER IF EXISTS book_copies_notify ON book_copies",
+                        "CREATE TRIGGER book_copies_notify AFTER INSERT OR DELETE ON book_copies " +
+                                "FOR EACH ROW EXECUTE FUNCTION library_notify_change('copies_id', 'books_id', '')",
+                        "DROP TRIGGER IF EXISTS loans_notify ON loans",
+                        "CREATE TRIGGER loans_notify AFTER INSERT OR DELETE OR UPDATE OF returned_at, due_date ON loans " +
+                                "FOR EACH ROW EXECUTE FUNCTION library_notify_change('loans_id', '', 'users_id')",
+
+                        """
+                        CREATE OR REPLACE FUNCTION library_notify_author_books() RETURNS trigger AS $$
+                        BEGIN
+                            PERFORM pg_notify('library_changes', 'book_authors:UPDATE:' || ba.books_id || ':' || ba.books_id || ':')
+                            FROM book_authors ba WHERE ba.authors_id = NEW.authors_id;
+                            RETURN NULL;
+                        END $$ LANGUAGE plpgsql
+                        """,
+                        "DROP TRIGGER IF EXISTS authors_notify ON authors",
+                        // deletes cascade to book_authors, whose own trigger announces them
+                        "CREATE TRIGGER authors_notify AFTER UPDATE OF full_name ON authors " +
+                                "FOR EACH ROW WHEN (OLD.full_name IS DISTINCT FROM NEW.full_name) " +
+                                "EXECUTE FUNCTION library_notify_author_books()"
+                ),
+
+                // One row per counter made every checkout and return queue on 'available_copies' and
+                // 'active_loans'. Each counter is now split into 16 shards picked by backend pid and summed on
+                // read. A writer locks its shard's rows in name order the first time it bumps one in a
+                // transaction, so a checkout (copies, then loans) and a return (loans, then copies) landing on
+                // the same shard can't deadlock. InventoryCounters.reconcile() folds the shards back into shard 0.
+                new Migration(11, "sharded inventory counters",
+                        "ALTER TABLE library_counters ADD COLUMN IF NOT EXISTS shard SMALLINT NOT NULL DEFAULT 0",
+                        "ALTER TABLE library_counters DROP CONSTRAINT IF EXISTS library_counters_pkey",
+                        "ALTER TABLE library_counters ADD PRIMARY KEY (name, shard)",
+                        "INSERT INTO library_counters (name, shard, value) " +
+                                "SELECT c.name, s, 0 FROM (SELECT DISTINCT name FROM library_counters) c " +
+                                "CROSS JOIN generate_series(1, 15) s " +
+                                "ON CONFLICT DO NOTHING",
+
+                        """
+                        CREATE OR REPLACE FUNCTION library_bump_counter(p_name TEXT, p_delta BIGINT) RETURNS void AS $$
+                        DECLARE
+                            s SMALLINT := pg_backend_pid() % 16;
+                        BEGIN
+                            IF p_delta = 0 THEN RETURN; END IF;
+                            IF current_setting('library.counter_shard_locked', true) IS DISTINCT FROM 'on' THEN
+                                PERFORM 1 FROM library_counters WHERE shard = s ORDER BY name FOR UPDATE;
+                                PERFORM set_config('library.counter_shard_locked', 'on', true);
+                            END IF;
+                            UPDATE library_counters SET value = value + p_delta, updated_at = now()
+                            WHERE name = p_name AND shard = s;
+                        END $$ LANGUAGE plpgsql
+                        """
+                )
+        );
+    }
+}
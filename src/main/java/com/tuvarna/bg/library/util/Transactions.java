@@ -0,0 +1,63 @@
+package com.tuvarna.bg.library.util;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Logger;
+
+/**
+ * Runs a unit of work in one transaction on one pooled connection, retrying it from the start when
+ * PostgreSQL aborts it with a serialization failure (40001) or a deadlock (40P01). Both are transient
+ * under contention and the server guarantees nothing from the aborted attempt was kept, so the work
+ * must be safe to run again (no side effects outside the connection).
+ */
+public final class Transactions {
+    private static final Logger LOGGER = Logger.getLogger(Transactions.class.getName());
+
+    private static final int MAX_ATTEMPTS = Integer.getInteger("library.tx.maxAttempts", 5);
+    private static final long BASE_BACKOFF_MS = 10;
+
+    @FunctionalInterface
+    public interface Work<T> {
+        T run(Connection conn) throws SQLException;
+    }
+
+    private Transactions() { }
+
+    public static <T> T run(Work<T> work) throws SQLException {
+        for (int attempt = 1; ; attempt++) {
+            try (Connection conn = DatabaseUtil.getConnection()) {
+                conn.setAutoCommit(false);
+                try {
+                    T result = work.run(conn);
+                    conn.commit();
+                    return result;
+                } catch (SQLException e) {
+                    conn.rollback();
+                    if (!isRetryable(e) || attempt >= MAX_ATTEMPTS) throw e;
+                    LOGGER.fine("Retrying transaction after " + e.getSQLState() + " (attempt " + attempt + ")");
+                } catch (RuntimeException e) {
+                    conn.rollback();
+                    throw e;
+                }
+            }
+            backoff(attempt);
+        }
+    }
+
+    public static boolean isRetryable(SQLException e) {
+        String state = e.getSQLState();
+        return "40001".equals(state) || "40P01".equals(state);
+    }
+
+    // Jittered exponential backoff so competing desks don't collide again in lockstep
+    private static void backoff(int attempt) throws SQLException {
+        long max = BASE_BACKOFF_MS << Math.min(attempt, 6);
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(BASE_BACKOFF_MS, max + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while retrying transaction", e);
+        }
+    }
+}
@@ -13,6 +13,7 @@ module com.tuvarna.bg.library {
     requires static lombok;
     requires java.desktop;
     requires java.sql;
+    requires org.postgresql.jdbc;
 
     // Application entry
     exports com.tuvarna.bg.library;
@@ -21,6 +22,9 @@ module com.tuvarna.bg.library {
     exports com.tuvarna.bg.library.controllers;
     opens com.tuvarna.bg.library.controllers to javafx.fxml;
 
+    // Custom controls (instantiated from FXML)
+    exports com.tuvarna.bg.library.ui;
+
     // Entities (need both for TableView reflection & API visibility)
     exports com.tuvarna.bg.library.entity;
     opens com.tuvarna.bg.library.entity to javafx.base;